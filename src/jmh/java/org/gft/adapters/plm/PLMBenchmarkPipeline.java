@@ -0,0 +1,44 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapter pipeline that hands every event to a JMH blackhole.
+ */
+public class PLMBenchmarkPipeline implements IAdapterPipeline {
+
+    private final Blackhole blackhole;
+
+    public PLMBenchmarkPipeline(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void process(Map<String, Object> event) {
+        this.blackhole.consume(event);
+    }
+
+    @Override
+    public List<IAdapterPipelineElement> getPipelineElements() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+    }
+
+    @Override
+    public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+    }
+
+    @Override
+    public IAdapterPipelineElement getPipelineSink() {
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package org.gft.adapters.plm;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One live poll against the local stub server: window request, response decoding and emission
+ * of every sample into the pipeline. The events counter reports events/sec, SampleTime mode the
+ * p99 latency of a poll and -prof gc the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PLMEndToEndBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Events {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    @Param({"1", "8"})
+    public int signals;
+
+    @Param({"1000", "50000"})
+    public int samples;
+
+    private PLMStubServer server;
+    private PLMHttpStreamProtocol protocol;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new PLMStubServer(Math.max(signals, 100), samples);
+        StringBuilder names = new StringBuilder("Sensor 0");
+        for (int i = 1; i < signals; i++) {
+            names.append(",Sensor ").append(i);
+        }
+        PLMHttpConfig config = new PLMHttpConfig("user", "password", "benchmark-" + System.nanoTime(),
+                names.toString(), "2000-01-01 00:00:00", "CurrentDateTime");
+        config.setBaseUrl(server.getBaseUrl());
+        protocol = new PLMHttpStreamProtocol(null, null, config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        protocol.stop();
+        server.close();
+    }
+
+    @Benchmark
+    public void poll(Events events, Blackhole blackhole) {
+        // keep the window in the present so neither the window cache nor a checkpoint short-cuts the request
+        protocol.config.moveTo(System.currentTimeMillis() - 60000);
+        events.events += protocol.emitWindow(new PLMBenchmarkPipeline(blackhole));
+    }
+}
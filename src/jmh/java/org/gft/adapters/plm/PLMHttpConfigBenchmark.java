@@ -0,0 +1,44 @@
+package org.gft.adapters.plm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of advancing the window cursor by one window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PLMHttpConfigBenchmark {
+
+    private PLMHttpConfig config;
+
+    @Setup
+    public void setUp() {
+        config = new PLMHttpConfig("user", "password", "model", "Sensor 0", "2000-01-01 00:00:00", "CurrentDateTime");
+    }
+
+    @Benchmark
+    public void nextWindow(Blackhole blackhole) {
+        PLMTimeWindow window = config.nextWindow();
+        config.advance(window);
+        blackhole.consume(window);
+        if (config.isLive()) {
+            config.moveTo(946684800000L);
+        }
+    }
+}
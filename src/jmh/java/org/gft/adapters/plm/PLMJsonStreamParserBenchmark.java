@@ -0,0 +1,76 @@
+package org.gft.adapters.plm;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an aggr_exp_dt response into pipeline events. The events counter reports events/sec,
+ * run with -prof gc for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PLMJsonStreamParserBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Events {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    @Param({"1000", "100000"})
+    public int samples;
+
+    private byte[] response;
+    private PLMJsonStreamParser parser;
+    private PLMSignal signal;
+    private PLMSampleBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        response = PLMStubServer.window(946684800000L, samples);
+        parser = new PLMJsonStreamParser();
+        signal = new PLMSignal("Sensor 0", "100000", "urn%3Aplm%3Asensor%3A0%3Avalue");
+        buffer = new PLMSampleBuffer(false);
+    }
+
+    @Benchmark
+    public void parse(Events events, Blackhole blackhole) {
+        events.events += parser.parse(new ByteArrayInputStream(response), signal, new PLMBenchmarkPipeline(blackhole));
+    }
+
+    @Benchmark
+    public void readColumns(Events events, Blackhole blackhole) {
+        // the backfill path: decode into columns, then emit through the row view
+        buffer.clear();
+        parser.read(new ByteArrayInputStream(response), buffer);
+        PLMBenchmarkPipeline pipeline = new PLMBenchmarkPipeline(blackhole);
+        for (int i = 0; i < buffer.size(); i++) {
+            pipeline.process(buffer.row(i, signal));
+        }
+        events.events += buffer.size();
+    }
+}
@@ -0,0 +1,44 @@
+package org.gft.adapters.plm;
+
+import org.json.JSONArray;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a q_search response into the sensor catalogue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PLMSensorCatalogueBenchmark {
+
+    @Param({"100", "10000"})
+    public int sensors;
+
+    private String response;
+
+    @Setup
+    public void setUp() {
+        response = PLMStubServer.catalogue(sensors).toString();
+    }
+
+    @Benchmark
+    public PLMSensorCatalogue parse() {
+        return PLMSensorCatalogue.parse(new JSONArray(new JSONTokener(response)), 0);
+    }
+}
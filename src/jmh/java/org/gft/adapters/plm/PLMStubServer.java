@@ -0,0 +1,81 @@
+package org.gft.adapters.plm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local stand-in for the TruePLM REST API, answering admin/token, bkd/q_search and
+ * bkd/aggr_exp_dt with payloads shaped like recorded server responses.
+ */
+public class PLMStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+
+    public PLMStubServer(int sensors, int events) throws IOException {
+        byte[] token = new JSONObject().put("token", "benchmark").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] catalogue = catalogue(sensors).toString().getBytes(StandardCharsets.UTF_8);
+        byte[] window = window(0, events);
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/api/admin/token", exchange -> respond(exchange, token));
+        this.server.createContext("/api/bkd/q_search/", exchange -> respond(exchange, catalogue));
+        this.server.createContext("/api/bkd/aggr_exp_dt/", exchange -> respond(exchange, window));
+        this.server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/api/";
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    /**
+     * @return a q_search result with the given number of sensors, named "Sensor 0", "Sensor 1", ...
+     */
+    public static JSONArray catalogue(int sensors) {
+        JSONArray result = new JSONArray();
+        for (int i = 0; i < sensors; i++) {
+            JSONArray properties = new JSONArray()
+                    .put(new JSONObject().put("name", "urn:plm:sensor:" + i + ":value").put("val", "1024 items"))
+                    .put(new JSONObject().put("name", "description").put("val", "Sensor " + i));
+            result.put(new JSONObject().put("bkdn_elem_info", new JSONObject()
+                    .put("name", "Sensor " + i)
+                    .put("instance_id", 100000 + i)
+                    .put("properties", properties)));
+        }
+        return result;
+    }
+
+    /**
+     * @return an aggr_exp_dt?format=json body with one sample per second starting at from
+     */
+    public static byte[] window(long from, int events) {
+        StringBuilder body = new StringBuilder(events * 48).append('[');
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"timestamp\":").append(from + i * 1000L)
+                    .append(",\"value\":").append(Math.sin(i / 100.0) * 50 + 20).append('}');
+        }
+        return body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
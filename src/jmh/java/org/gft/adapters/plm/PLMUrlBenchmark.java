@@ -0,0 +1,43 @@
+package org.gft.adapters.plm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the aggr_exp_dt URL of a window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PLMUrlBenchmark {
+
+    private PLMHttpStreamProtocol protocol;
+    private PLMSignal signal;
+    private PLMTimeWindow window;
+
+    @Setup
+    public void setUp() {
+        protocol = new PLMHttpStreamProtocol();
+        protocol.config = new PLMHttpConfig("user", "password", "Use Case 1", "Sensor 0", "2000-01-01 00:00:00", "CurrentDateTime");
+        signal = new PLMSignal("Sensor 0", "100000", "urn%3Aplm%3Asensor%3A0%3Avalue");
+        window = new PLMTimeWindow(946684800000L, 946686600000L);
+    }
+
+    @Benchmark
+    public String getUrl() {
+        return protocol.getUrl(signal, "eyJhbGciOiJIUzI1NiJ9.e30.token", window);
+    }
+}
@@ -21,37 +21,81 @@ package org.gft;
 import org.apache.streampipes.container.extensions.ExtensionsModelSubmitter;
 import org.apache.streampipes.container.model.SpServiceDefinition;
 import org.apache.streampipes.container.model.SpServiceDefinitionBuilder;
+import org.apache.streampipes.dataformat.SpDataFormatFactory;
 import org.apache.streampipes.dataformat.cbor.CborDataFormatFactory;
 import org.apache.streampipes.dataformat.fst.FstDataFormatFactory;
 import org.apache.streampipes.dataformat.json.JsonDataFormatFactory;
 import org.apache.streampipes.dataformat.smile.SmileDataFormatFactory;
+import org.apache.streampipes.messaging.SpProtocolDefinitionFactory;
 import org.apache.streampipes.messaging.jms.SpJmsProtocolFactory;
 import org.apache.streampipes.messaging.kafka.SpKafkaProtocolFactory;
 import org.apache.streampipes.messaging.mqtt.SpMqttProtocolFactory;
 
 import org.gft.adapters.plm.PLMHttpStreamProtocol;
+import org.gft.adapters.plm.PLMHttpUtils;
+import org.gft.adapters.plm.PLMJsonStreamParser;
+import org.gft.adapters.plm.PLMMetrics;
+import org.gft.adapters.plm.PLMSampleBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Init extends ExtensionsModelSubmitter {
 
   public static void main (String[] args) {
+    if (Arrays.asList(args).contains("--warmup")) {
+      warmup();
+      return;
+    }
+    PLMMetrics.serve(PLMHttpUtils.getMetricsPort());
     new Init().init();
   }
 
   @Override
   public SpServiceDefinition provideServiceDefinition() {
-    return SpServiceDefinitionBuilder.create("org.gft",
+    SpServiceDefinitionBuilder builder = SpServiceDefinitionBuilder.create("org.gft",
                     "human-readable service name",
                     "human-readable service description", 8090)
-            .registerAdapter(new PLMHttpStreamProtocol())
-            .registerMessagingFormats(
-                    new JsonDataFormatFactory(),
-                    new CborDataFormatFactory(),
-                    new SmileDataFormatFactory(),
-                    new FstDataFormatFactory())
-            .registerMessagingProtocols(
-                    new SpKafkaProtocolFactory(),
-                    new SpJmsProtocolFactory(),
-                    new SpMqttProtocolFactory())
-            .build();
+            .registerAdapter(new PLMHttpStreamProtocol());
+    // only what PLM_MESSAGING_FORMATS and PLM_MESSAGING_PROTOCOLS ask for, all of them by default
+    for (String format : PLMHttpUtils.getMessagingFormats()) {
+      builder.registerMessagingFormat(format(format));
+    }
+    for (String protocol : PLMHttpUtils.getMessagingProtocols()) {
+      builder.registerMessagingProtocol(protocol(protocol));
+    }
+    return builder.build();
+  }
+
+  private static SpDataFormatFactory format(String name) {
+    switch (name) {
+      case "json": return new JsonDataFormatFactory();
+      case "cbor": return new CborDataFormatFactory();
+      case "smile": return new SmileDataFormatFactory();
+      case "fst": return new FstDataFormatFactory();
+      default: throw new IllegalArgumentException("Unknown messaging format " + name + ", expected json, cbor, smile or fst");
+    }
+  }
+
+  private static SpProtocolDefinitionFactory<?> protocol(String name) {
+    switch (name) {
+      case "kafka": return new SpKafkaProtocolFactory();
+      case "jms": return new SpJmsProtocolFactory();
+      case "mqtt": return new SpMqttProtocolFactory();
+      default: throw new IllegalArgumentException("Unknown messaging protocol " + name + ", expected kafka, jms or mqtt");
+    }
+  }
+
+  /**
+   * Loads the classes a start and the first fetch need without contacting anything, then exits.
+   * Run once with a class sharing option (see Dockerfile) to store them in a shared class archive.
+   */
+  private static void warmup() {
+    new Init().provideServiceDefinition();
+    new PLMHttpStreamProtocol().declareModel();
+    byte[] window = "[{\"timestamp\":1,\"value\":1.5},{\"timestamp\":2,\"value\":2.5}]".getBytes(StandardCharsets.UTF_8);
+    new PLMJsonStreamParser().read(new ByteArrayInputStream(window), new PLMSampleBuffer(PLMHttpUtils.isOffHeapBuffers()));
+    PLMMetrics.registry().scrape();
   }
 }
@@ -0,0 +1,270 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+import org.apache.streampipes.model.schema.EventProperty;
+import org.apache.streampipes.model.schema.EventPropertyPrimitive;
+import org.apache.streampipes.model.schema.EventSchema;
+import org.apache.streampipes.sdk.helpers.EpProperties;
+import org.apache.streampipes.sdk.helpers.Labels;
+import org.apache.streampipes.sdk.utils.Datatypes;
+import org.apache.streampipes.vocabulary.SO;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Emission stage that downsamples a signal into fixed time buckets. Every numeric field is
+ * reduced on the fly to the selected functions (min, max, mean, last, count), so memory stays
+ * constant per signal whatever the sample rate; one event per bucket is emitted once a later
+ * sample arrives or the fetched windows passed the end of the bucket. Other fields keep the
+ * value of the last sample.
+ */
+public class PLMAggregator implements IAdapterPipeline {
+
+    public static final String TIMESTAMP_KEY = "timestamp";
+    public static final String COUNT_KEY = "count";
+
+    enum Function {
+        MIN, MAX, MEAN, LAST, COUNT;
+
+        String key(String field) {
+            return field + "_" + name().toLowerCase();
+        }
+    }
+
+    private final IAdapterPipeline pipeline;
+    private final long bucket_millis;
+    private final boolean[] functions = new boolean[Function.values().length];
+    private final Map<PLMSignal, Bucket> buckets = new HashMap<>();
+    private final Map<String, Object> event = new HashMap<>();
+    private PLMSignal signal;
+
+    public PLMAggregator(IAdapterPipeline pipeline, long bucket_millis, List<String> functions) {
+        this.pipeline = pipeline;
+        this.bucket_millis = bucket_millis;
+        for (String function : functions) {
+            this.functions[Function.valueOf(function.trim().toUpperCase()).ordinal()] = true;
+        }
+    }
+
+    /**
+     * Aggregates the following samples as samples of the given signal.
+     */
+    public void select(PLMSignal signal) {
+        this.signal = signal;
+    }
+
+    @Override
+    public void process(Map<String, Object> sample) {
+        Object timestamp = sample.get(TIMESTAMP_KEY);
+        if (!(timestamp instanceof Number)) {
+            return;
+        }
+        long start = Math.floorDiv(((Number) timestamp).longValue(), this.bucket_millis) * this.bucket_millis;
+        Bucket bucket = this.buckets.computeIfAbsent(this.signal, s -> new Bucket());
+        if (bucket.count > 0 && bucket.start != start) {
+            emit(this.signal, bucket);
+        }
+        bucket.start = start;
+        bucket.count++;
+        for (Map.Entry<String, Object> field : sample.entrySet()) {
+            String key = field.getKey();
+            if (key.equals(TIMESTAMP_KEY) || key.equals(PLMSignal.SIGNAL_KEY) || key.equals(PLMSignal.URN_KEY)) {
+                continue;
+            }
+            bucket.add(key, field.getValue());
+        }
+    }
+
+    /**
+     * Emits the bucket of a signal if the fetched windows passed its end.
+     */
+    public void close(PLMSignal signal, long until) {
+        Bucket bucket = this.buckets.get(signal);
+        if (bucket != null && bucket.count > 0 && bucket.start + this.bucket_millis <= until) {
+            emit(signal, bucket);
+        }
+    }
+
+    private void emit(PLMSignal signal, Bucket bucket) {
+        this.event.clear();
+        this.event.put(PLMSignal.SIGNAL_KEY, signal.getName());
+        this.event.put(PLMSignal.URN_KEY, signal.getPlainUrn());
+        this.event.put(TIMESTAMP_KEY, bucket.start);
+        if (this.functions[Function.COUNT.ordinal()]) {
+            this.event.put(COUNT_KEY, bucket.count);
+        }
+        for (Field field : bucket.fields.values()) {
+            if (!field.numeric) {
+                if (field.last != null) {
+                    this.event.put(field.name, field.last);
+                }
+                continue;
+            }
+            if (field.count == 0) {
+                // no value for this field in the bucket
+                continue;
+            }
+            if (this.functions[Function.MIN.ordinal()]) {
+                this.event.put(Function.MIN.key(field.name), field.min);
+            }
+            if (this.functions[Function.MAX.ordinal()]) {
+                this.event.put(Function.MAX.key(field.name), field.max);
+            }
+            if (this.functions[Function.MEAN.ordinal()]) {
+                this.event.put(Function.MEAN.key(field.name), field.sum / field.count);
+            }
+            if (this.functions[Function.LAST.ordinal()]) {
+                this.event.put(Function.LAST.key(field.name), field.last_number);
+            }
+        }
+        this.pipeline.process(this.event);
+        bucket.reset();
+    }
+
+    /**
+     * @return the schema of the buckets of samples with the given schema
+     */
+    public static EventSchema aggregateSchema(EventSchema sample, List<String> functions) {
+        EventSchema schema = new EventSchema();
+        schema.addEventProperty(EpProperties.timestampProperty(TIMESTAMP_KEY));
+        for (String name : functions) {
+            if (Function.valueOf(name.trim().toUpperCase()) == Function.COUNT) {
+                schema.addEventProperty(EpProperties.longEp(Labels.withId(COUNT_KEY), COUNT_KEY, SO.Number));
+            }
+        }
+        for (EventProperty property : sample.getEventProperties()) {
+            String field = property.getRuntimeName();
+            if (field.equals(TIMESTAMP_KEY)) {
+                continue;
+            }
+            if (!isNumeric(property)) {
+                schema.addEventProperty(property);
+                continue;
+            }
+            for (String name : functions) {
+                Function function = Function.valueOf(name.trim().toUpperCase());
+                if (function != Function.COUNT) {
+                    schema.addEventProperty(EpProperties.doubleEp(Labels.withId(function.key(field)), function.key(field), SO.Number));
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * @return a single sample in the shape of a bucket, for previews
+     */
+    public static Map<String, Object> asBucket(Map<String, Object> sample, List<String> functions) {
+        Map<String, Object> bucket = new HashMap<>();
+        for (Map.Entry<String, Object> field : sample.entrySet()) {
+            if (field.getKey().equals(TIMESTAMP_KEY) || !(field.getValue() instanceof Number)) {
+                bucket.put(field.getKey(), field.getValue());
+                continue;
+            }
+            for (String name : functions) {
+                Function function = Function.valueOf(name.trim().toUpperCase());
+                if (function != Function.COUNT) {
+                    bucket.put(function.key(field.getKey()), ((Number) field.getValue()).doubleValue());
+                }
+            }
+        }
+        for (String name : functions) {
+            if (Function.valueOf(name.trim().toUpperCase()) == Function.COUNT) {
+                bucket.put(COUNT_KEY, 1L);
+            }
+        }
+        return bucket;
+    }
+
+    private static boolean isNumeric(EventProperty property) {
+        if (!(property instanceof EventPropertyPrimitive)) {
+            return false;
+        }
+        String type = ((EventPropertyPrimitive) property).getRuntimeType();
+        return Datatypes.Double.toString().equals(type) || Datatypes.Float.toString().equals(type)
+                || Datatypes.Long.toString().equals(type) || Datatypes.Integer.toString().equals(type);
+    }
+
+    private static class Bucket {
+
+        private long start;
+        private long count;
+        private final Map<String, Field> fields = new LinkedHashMap<>();
+
+        private void add(String name, Object value) {
+            Field field = this.fields.get(name);
+            if (field == null) {
+                field = new Field(name);
+                this.fields.put(name, field);
+            }
+            field.add(value);
+        }
+
+        private void reset() {
+            this.count = 0;
+            for (Field field : this.fields.values()) {
+                field.reset();
+            }
+        }
+    }
+
+    private static class Field {
+
+        private final String name;
+        private boolean numeric;
+        private long count;
+        private double min;
+        private double max;
+        private double sum;
+        private double last_number;
+        private Object last;
+
+        private Field(String name) {
+            this.name = name;
+        }
+
+        private void add(Object value) {
+            if (!(value instanceof Number)) {
+                this.last = value;
+                return;
+            }
+            double number = ((Number) value).doubleValue();
+            this.numeric = true;
+            this.min = this.count == 0 ? number : Math.min(this.min, number);
+            this.max = this.count == 0 ? number : Math.max(this.max, number);
+            this.sum += number;
+            this.last_number = number;
+            this.count++;
+        }
+
+        private void reset() {
+            this.count = 0;
+            this.sum = 0;
+            this.last = null;
+        }
+    }
+
+    @Override
+    public List<IAdapterPipelineElement> getPipelineElements() {
+        return this.pipeline.getPipelineElements();
+    }
+
+    @Override
+    public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+        this.pipeline.setPipelineElements(pipelineElements);
+    }
+
+    @Override
+    public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+        this.pipeline.changePipelineSink(pipelineSink);
+    }
+
+    @Override
+    public IAdapterPipelineElement getPipelineSink() {
+        return this.pipeline.getPipelineSink();
+    }
+}
@@ -0,0 +1,101 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.exception.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches closed historical windows in the fetch lane of the adapter, at most max_width at once, and hands
+ * the decoded responses (one buffer per signal) over in timestamp order.
+ * When the server throttles us the number of requests in flight is halved and all workers
+ * wait for the requested pause, then it grows back by one per successful window.
+ */
+public class PLMBackfill {
+
+    interface WindowFetcher {
+        PLMSampleBuffer[] fetch(PLMTimeWindow window) throws ParseException;
+    }
+
+    interface WindowConsumer {
+        void accept(PLMTimeWindow window, PLMSampleBuffer[] data) throws ParseException, InterruptedException;
+    }
+
+    private static final long DEFAULT_PAUSE = 5000;
+
+    private final Logger logger = LoggerFactory.getLogger(PLMBackfill.class);
+
+    private final WindowFetcher fetcher;
+    private final PLMScheduler.Lane lane;
+    private final int max_width;
+    private final long window;
+    private final AtomicInteger width;
+    private final AtomicLong paused_until = new AtomicLong(0);
+
+    public PLMBackfill(WindowFetcher fetcher, PLMScheduler.Lane lane, int max_width, long window) {
+        this.fetcher = fetcher;
+        this.lane = lane;
+        this.max_width = max_width;
+        this.window = window;
+        this.width = new AtomicInteger(max_width);
+    }
+
+    /**
+     * Emits every window starting at from whose end lies before until.
+     *
+     * @return the start of the first window that was not emitted
+     */
+    public long run(long from, long until, WindowConsumer consumer) throws InterruptedException {
+        Deque<PLMTimeWindow> windows = new ArrayDeque<>();
+        Deque<Future<PLMSampleBuffer[]>> in_flight = new ArrayDeque<>();
+        long next = from;
+
+        try {
+            while (next + this.window <= until || !in_flight.isEmpty()) {
+                while (next + this.window <= until && in_flight.size() < this.width.get()) {
+                    PLMTimeWindow window = new PLMTimeWindow(next, next + this.window);
+                    windows.add(window);
+                    in_flight.add(this.lane.submit(() -> fetch(window)));
+                    next = window.getTo();
+                }
+
+                PLMTimeWindow head = windows.poll();
+                PLMSampleBuffer[] data = in_flight.poll().get();
+                consumer.accept(head, data);
+                from = head.getTo();
+            }
+        } catch (ExecutionException e) {
+            logger.error("Backfill stopped at " + from + ": " + e.getCause().getMessage());
+        } finally {
+            for (Future<PLMSampleBuffer[]> pending : in_flight) {
+                pending.cancel(true);
+            }
+        }
+        return from;
+    }
+
+    private PLMSampleBuffer[] fetch(PLMTimeWindow window) throws InterruptedException {
+        while (true) {
+            long pause = this.paused_until.get() - System.currentTimeMillis();
+            if (pause > 0) {
+                Thread.sleep(pause);
+            }
+            try {
+                PLMSampleBuffer[] data = this.fetcher.fetch(window);
+                this.width.updateAndGet(w -> Math.min(this.max_width, w + 1));
+                return data;
+            } catch (PLMThrottledException e) {
+                long retry_after = e.getRetryAfter() > 0 ? e.getRetryAfter() : DEFAULT_PAUSE;
+                this.paused_until.accumulateAndGet(System.currentTimeMillis() + retry_after, Math::max);
+                int w = this.width.updateAndGet(current -> Math.max(1, current / 2));
+                logger.warn("Server throttled backfill, waiting " + retry_after + " ms with " + w + " requests in flight.");
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+import org.apache.streampipes.model.schema.EventProperty;
+import org.apache.streampipes.model.schema.EventSchema;
+import org.apache.streampipes.sdk.helpers.EpProperties;
+import org.apache.streampipes.sdk.helpers.Labels;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Emission stage between the sample parser and the adapter pipeline. The samples of a signal are
+ * collected column by column and handed on as one event holding a list per field, once batch_size
+ * samples are collected, the first of them waited longer than linger or the window ends, so the
+ * broker carries one message per batch instead of one per sample. Event map and column lists are
+ * reused like the parser's sample map, the pipeline processes events synchronously.
+ */
+public class PLMBatchEmitter implements IAdapterPipeline {
+
+    private final IAdapterPipeline pipeline;
+    private final int batch_size;
+    private final long linger;
+    private final Map<String, Object> batch = new HashMap<>();
+    private final Map<String, List<Object>> columns = new LinkedHashMap<>();
+    private int count;
+    private long first;
+
+    public PLMBatchEmitter(IAdapterPipeline pipeline, int batch_size, long linger) {
+        this.pipeline = pipeline;
+        this.batch_size = batch_size;
+        this.linger = linger;
+    }
+
+    @Override
+    public void process(Map<String, Object> event) {
+        if (this.count == 0) {
+            this.first = System.currentTimeMillis();
+        }
+        for (Map.Entry<String, Object> field : event.entrySet()) {
+            String key = field.getKey();
+            if (key.equals(PLMSignal.SIGNAL_KEY) || key.equals(PLMSignal.URN_KEY)) {
+                this.batch.put(key, field.getValue());
+                continue;
+            }
+            List<Object> column = this.columns.computeIfAbsent(key, k -> new ArrayList<>(this.batch_size));
+            pad(column, this.count);
+            column.add(field.getValue());
+        }
+        this.count++;
+        if (this.count >= this.batch_size || System.currentTimeMillis() - this.first >= this.linger) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands the samples collected so far on as one event.
+     */
+    public void flush() {
+        if (this.count == 0) {
+            return;
+        }
+        for (Map.Entry<String, List<Object>> column : this.columns.entrySet()) {
+            // fields some samples lack are null in their rows, so all columns stay aligned
+            pad(column.getValue(), this.count);
+            this.batch.put(column.getKey(), column.getValue());
+        }
+        this.pipeline.process(this.batch);
+        for (List<Object> column : this.columns.values()) {
+            column.clear();
+        }
+        this.count = 0;
+    }
+
+    /**
+     * Emits a decoded window in batches cut straight from its columns, numeric fields as
+     * primitive arrays.
+     */
+    public void emit(PLMSampleBuffer buffer, PLMSignal signal) {
+        flush();
+        this.batch.clear();
+        for (int from = 0; from < buffer.size(); from += this.batch_size) {
+            int to = Math.min(buffer.size(), from + this.batch_size);
+            this.batch.put(PLMSignal.SIGNAL_KEY, signal.getName());
+            this.batch.put(PLMSignal.URN_KEY, signal.getPlainUrn());
+            for (PLMSampleBuffer.Column column : buffer.columns()) {
+                this.batch.put(column.getName(), column.slice(from, to));
+            }
+            this.pipeline.process(this.batch);
+        }
+    }
+
+    private static void pad(List<Object> column, int size) {
+        while (column.size() < size) {
+            column.add(null);
+        }
+    }
+
+    /**
+     * @return the schema of batches of samples with the given schema, every field turned into a list
+     */
+    public static EventSchema batchSchema(EventSchema sample) {
+        EventSchema schema = new EventSchema();
+        for (EventProperty property : sample.getEventProperties()) {
+            schema.addEventProperty(EpProperties.listEp(Labels.withId(property.getRuntimeName()), property.getRuntimeName(), property));
+        }
+        return schema;
+    }
+
+    /**
+     * @return a single sample in the shape of a batch, for previews
+     */
+    public static Map<String, Object> asBatch(Map<String, Object> sample) {
+        Map<String, Object> batch = new HashMap<>();
+        for (Map.Entry<String, Object> field : sample.entrySet()) {
+            batch.put(field.getKey(), Collections.singletonList(field.getValue()));
+        }
+        return batch;
+    }
+
+    @Override
+    public List<IAdapterPipelineElement> getPipelineElements() {
+        return this.pipeline.getPipelineElements();
+    }
+
+    @Override
+    public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+        this.pipeline.setPipelineElements(pipelineElements);
+    }
+
+    @Override
+    public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+        this.pipeline.changePipelineSink(pipelineSink);
+    }
+
+    @Override
+    public IAdapterPipelineElement getPipelineSink() {
+        return this.pipeline.getPipelineSink();
+    }
+}
@@ -0,0 +1,147 @@
+package org.gft.adapters.plm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * End of the last window fully handed to the pipeline, per signal of an adapter. Commits are
+ * appended to a log file under the data directory and synced, the highest line of a signal wins.
+ * The log is compacted to one line per signal when it grows too long.
+ */
+public class PLMCheckpointStore {
+
+    private static final int COMPACT_AFTER = 10000;
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMCheckpointStore.class);
+    private static final Map<Path, PLMCheckpointStore> stores = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Map<String, Long> checkpoints = new HashMap<>();
+    private FileChannel log;
+    private int lines;
+
+    PLMCheckpointStore(Path file) {
+        this.file = file;
+        read();
+    }
+
+    /**
+     * @return the store of the configured adapter; adapters on the same model with other signals
+     * or another interval get stores of their own
+     */
+    public static PLMCheckpointStore of(PLMHttpConfig config) {
+        String key = config.getBaseUrl() + "|" + config.getRepository() + "|" + config.getModel()
+                + "|" + String.join(",", config.getSignals()) + "|" + config.getLowestDate() + "|" + config.getHighestDate();
+        String model = config.getModel().replaceAll("[^A-Za-z0-9_.-]", "_");
+        Path file = PLMHttpUtils.getDataDirectory().resolve("checkpoints")
+                .resolve(model + "-" + Integer.toHexString(key.hashCode()) + ".log");
+        return stores.computeIfAbsent(file, PLMCheckpointStore::new);
+    }
+
+    /**
+     * @return the end of the last committed window of the signal, or -1 if there is none
+     */
+    public synchronized long get(PLMSignal signal) {
+        Long checkpoint = this.checkpoints.get(key(signal));
+        return checkpoint == null ? -1 : checkpoint;
+    }
+
+    public synchronized void commit(PLMSignal signal, long to) {
+        String key = key(signal);
+        Long previous = this.checkpoints.get(key);
+        if (previous != null && previous >= to) {
+            return;
+        }
+        this.checkpoints.put(key, to);
+        try {
+            if (this.lines >= COMPACT_AFTER) {
+                compact();
+            } else {
+                append(key, to);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write checkpoint " + this.file + ": " + e);
+            // e.g. closed by an interrupt, the next commit opens the log again
+            closeLog();
+        }
+    }
+
+    private void closeLog() {
+        if (this.log != null) {
+            try {
+                this.log.close();
+            } catch (IOException e) {
+                logger.debug("Could not close checkpoint log " + this.file + ": " + e.getMessage());
+            }
+            this.log = null;
+        }
+    }
+
+    private void append(String key, long to) throws IOException {
+        if (this.log == null) {
+            Files.createDirectories(this.file.getParent());
+            this.log = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer line = ByteBuffer.wrap((key + "\t" + to + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            this.log.write(line);
+        }
+        this.log.force(false);
+        this.lines++;
+    }
+
+    private void compact() throws IOException {
+        Files.createDirectories(this.file.getParent());
+        Path temp = Files.createTempFile(this.file.getParent(), this.file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> checkpoint : this.checkpoints.entrySet()) {
+                writer.write(checkpoint.getKey() + "\t" + checkpoint.getValue() + "\n");
+            }
+        }
+        closeLog();
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.lines = this.checkpoints.size();
+    }
+
+    private void read() {
+        if (!Files.isReadable(this.file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.lastIndexOf('\t');
+                // a line cut short by a crash is simply ignored, or loses against the line it
+                // was meant to follow since checkpoints only move forward
+                if (split > 0) {
+                    try {
+                        this.checkpoints.merge(line.substring(0, split), Long.parseLong(line.substring(split + 1)), Math::max);
+                        this.lines++;
+                    } catch (NumberFormatException e) {
+                        logger.debug("Skipping broken checkpoint line in " + this.file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read checkpoints " + this.file + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(PLMSignal signal) {
+        return signal.getId() + "\t" + signal.getUrn();
+    }
+}
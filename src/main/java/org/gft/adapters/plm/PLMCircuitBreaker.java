@@ -0,0 +1,119 @@
+package org.gft.adapters.plm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker per PLM server, shared by all adapters of the JVM. After a row of failed or
+ * throttled requests it opens and requests fail right away; once the pause is over a single
+ * trial request is let through, which closes it again or doubles the pause.
+ */
+public class PLMCircuitBreaker {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /**
+     * Thrown instead of sending a request while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long MIN_PAUSE = TimeUnit.SECONDS.toMillis(10);
+    private static final long MAX_PAUSE = TimeUnit.MINUTES.toMillis(5);
+    // a trial that neither succeeded nor failed within this time (aborted, say) lets the next one through
+    private static final long TRIAL_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMCircuitBreaker.class);
+    private static final Map<String, PLMCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final String server;
+    private final long min_pause;
+    private State state = State.CLOSED;
+    private int failures;
+    private long pause;
+    private long since;
+
+    /**
+     * @param min_pause first pause after the breaker opened, doubled by every failed trial
+     */
+    PLMCircuitBreaker(String server, long min_pause) {
+        this.server = server;
+        this.min_pause = min_pause;
+        this.pause = min_pause;
+        PLMMetrics.breaker(this);
+    }
+
+    public static PLMCircuitBreaker of(String server) {
+        return breakers.computeIfAbsent(server, s -> new PLMCircuitBreaker(s, MIN_PAUSE));
+    }
+
+    public String getServer() {
+        return this.server;
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * @throws OpenException if no request may be sent to the server right now
+     */
+    public synchronized void acquire() throws OpenException {
+        long now = System.currentTimeMillis();
+        if (this.state == State.OPEN && now >= this.since) {
+            this.state = State.HALF_OPEN;
+            this.since = now;
+            return;
+        }
+        if (this.state == State.HALF_OPEN && now - this.since > TRIAL_TIMEOUT) {
+            this.since = now;
+            return;
+        }
+        if (this.state != State.CLOSED) {
+            throw new OpenException("Circuit to " + this.server + " is open, not sending requests for "
+                    + Math.max(0, this.since - now) + " ms");
+        }
+    }
+
+    public synchronized void success() {
+        if (this.state != State.CLOSED) {
+            logger.info("Circuit to " + this.server + " closed again");
+        }
+        this.state = State.CLOSED;
+        this.failures = 0;
+        this.pause = this.min_pause;
+    }
+
+    /**
+     * @param retry_after pause the server asked for, 0 if none
+     */
+    public synchronized void failure(long retry_after) {
+        this.failures++;
+        if (this.state == State.HALF_OPEN) {
+            this.pause = Math.min(MAX_PAUSE, this.pause * 2);
+            open(retry_after);
+        } else if (this.state == State.CLOSED && this.failures >= FAILURE_THRESHOLD) {
+            open(retry_after);
+        }
+    }
+
+    private void open(long retry_after) {
+        long pause = Math.max(this.pause, retry_after);
+        this.state = State.OPEN;
+        this.since = System.currentTimeMillis() + pause;
+        this.failures = 0;
+        PLMMetrics.breakerOpened(this);
+        logger.warn("Circuit to " + this.server + " opened, pausing requests for " + pause + " ms");
+    }
+}
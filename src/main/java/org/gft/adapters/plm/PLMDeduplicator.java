@@ -0,0 +1,177 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * First emission stage, drops samples a signal delivered before. Windows share their boundary
+ * millisecond and retries or restarts fetch windows again, so the same sample can arrive more
+ * than once. Per signal the stage keeps the newest timestamp seen, the last RECENT timestamps let
+ * through and a low watermark, the largest timestamp that ever left the recent ones: a sample newer
+ * than the newest passes right away, one at or below the watermark is a straggler, one among the
+ * recent is a duplicate; both are dropped. A late sample between the two that was not seen yet
+ * passes once.
+ */
+public class PLMDeduplicator implements IAdapterPipeline {
+
+    static final int RECENT = 256;
+
+    private final IAdapterPipeline pipeline;
+    private final PLMMetrics.Window metrics;
+    // concurrent, polls read the newest timestamps while the emitter updates them
+    private final Map<PLMSignal, Seen> seen = new ConcurrentHashMap<>();
+    private Seen signal;
+
+    public PLMDeduplicator(IAdapterPipeline pipeline, PLMMetrics.Window metrics) {
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+    }
+
+    public IAdapterPipeline getTarget() {
+        return this.pipeline;
+    }
+
+    /**
+     * Checks the following samples against the samples seen of the given signal.
+     */
+    public void select(PLMSignal signal) {
+        this.signal = this.seen.computeIfAbsent(signal, s -> new Seen());
+    }
+
+    /**
+     * @return the newest timestamp let through of a signal, Long.MIN_VALUE if none yet
+     */
+    public long newest(PLMSignal signal) {
+        Seen seen = this.seen.get(signal);
+        return seen == null ? Long.MIN_VALUE : seen.newest;
+    }
+
+    /**
+     * Forgets the samples of a signal after a timestamp, so a window the pipeline failed on passes
+     * again when it is fetched again. The samples that reached the pipeline before the failure
+     * are emitted twice.
+     */
+    public void forget(PLMSignal signal, long after) {
+        Seen seen = this.seen.get(signal);
+        if (seen != null) {
+            seen.forget(after);
+        }
+    }
+
+    @Override
+    public void process(Map<String, Object> sample) {
+        Object timestamp = sample.get(PLMAggregator.TIMESTAMP_KEY);
+        if (!(timestamp instanceof Number) || accept(this.signal, ((Number) timestamp).longValue())) {
+            this.pipeline.process(sample);
+        }
+    }
+
+    /**
+     * Removes the samples of a decoded window that were seen before, without emitting anything.
+     */
+    public void filter(PLMSampleBuffer buffer, PLMSignal signal) {
+        PLMSampleBuffer.Column timestamps = buffer.getColumn(PLMAggregator.TIMESTAMP_KEY);
+        if (timestamps == null) {
+            return;
+        }
+        Seen seen = this.seen.computeIfAbsent(signal, s -> new Seen());
+        BitSet dropped = null;
+        for (int i = 0; i < buffer.size(); i++) {
+            Object timestamp = timestamps.has(i) ? timestamps.get(i) : null;
+            if (timestamp instanceof Number && !accept(seen, ((Number) timestamp).longValue())) {
+                if (dropped == null) {
+                    dropped = new BitSet();
+                }
+                dropped.set(i);
+            }
+        }
+        if (dropped != null) {
+            buffer.remove(dropped);
+        }
+    }
+
+    private boolean accept(Seen seen, long timestamp) {
+        if (timestamp > seen.newest) {
+            seen.newest = timestamp;
+            seen.remember(timestamp);
+            return true;
+        }
+        if (timestamp <= seen.watermark) {
+            this.metrics.dropped("straggler");
+            return false;
+        }
+        for (int i = 0; i < seen.size; i++) {
+            if (seen.recent[i] == timestamp) {
+                this.metrics.dropped("duplicate");
+                return false;
+            }
+        }
+        seen.remember(timestamp);
+        return true;
+    }
+
+    private static class Seen {
+
+        private volatile long newest = Long.MIN_VALUE;
+        // every timestamp let through is either among the recent ones or at most this
+        private long watermark = Long.MIN_VALUE;
+        // ring of the last timestamps let through, next points at the first one inserted once it is full
+        private final long[] recent = new long[RECENT];
+        private int next;
+        private int size;
+
+        private void remember(long timestamp) {
+            if (this.size == RECENT) {
+                // late samples make the first one inserted not necessarily the smallest
+                this.watermark = Math.max(this.watermark, this.recent[this.next]);
+            }
+            this.recent[this.next] = timestamp;
+            this.next = (this.next + 1) % RECENT;
+            this.size = Math.min(RECENT, this.size + 1);
+        }
+
+        private void forget(long after) {
+            long[] kept = new long[this.size];
+            int count = 0;
+            // oldest first, so the ring keeps its order
+            for (int i = 0; i < this.size; i++) {
+                long timestamp = this.recent[(this.next - this.size + i + RECENT) % RECENT];
+                if (timestamp <= after) {
+                    kept[count++] = timestamp;
+                }
+            }
+            this.next = 0;
+            this.size = 0;
+            for (int i = 0; i < count; i++) {
+                remember(kept[i]);
+            }
+            this.watermark = Math.min(this.watermark, after);
+            this.newest = Math.min(this.newest, after);
+        }
+    }
+
+    @Override
+    public List<IAdapterPipelineElement> getPipelineElements() {
+        return this.pipeline.getPipelineElements();
+    }
+
+    @Override
+    public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+        this.pipeline.setPipelineElements(pipelineElements);
+    }
+
+    @Override
+    public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+        this.pipeline.changePipelineSink(pipelineSink);
+    }
+
+    @Override
+    public IAdapterPipelineElement getPipelineSink() {
+        return this.pipeline.getPipelineSink();
+    }
+}
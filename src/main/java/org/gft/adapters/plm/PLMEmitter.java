@@ -0,0 +1,183 @@
+package org.gft.adapters.plm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Hands the windows an adapter fetched over to its pipeline. Fetching threads put decoded windows
+ * into a bounded {@link PLMRingBuffer} and go on fetching; a drain task on the emission pool of
+ * {@link PLMScheduler} emits them in the order they were put. An emitter has one drain task at most,
+ * queued or running, and it gives its thread back after a buffer full of windows so that the other
+ * adapters get their turn. The emission pool is not shared with the polls, so producers waiting for
+ * space cannot take the threads away that would make room for them.
+ * When the pipeline falls behind and the buffer is full, the policy decides: BLOCK makes the fetching
+ * thread wait for space, DROP_OLDEST and DROP_NEWEST discard a window instead. Later windows move
+ * the cursor and the checkpoints past a dropped window, so it is lost for good, even across a
+ * restart; drops are counted in plm.queue.dropped. With BLOCK nothing is lost.
+ */
+public class PLMEmitter<T> {
+
+    public enum Policy {
+        // the fetching thread waits until the pipeline took a window
+        BLOCK,
+        // the oldest queued window makes room for the new one
+        DROP_OLDEST,
+        // the new window is dropped while the queue is full
+        DROP_NEWEST
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(PLMEmitter.class);
+
+    private final PLMRingBuffer<T> queue;
+    private final Policy policy;
+    private final Consumer<T> emit;
+    private final Consumer<T> discard;
+    private final Runnable dropped;
+    private final String name;
+    // free slots, held by a producer from acquiring until its offer
+    private final Semaphore space;
+    // true while a drain task is queued or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * @param name names the emitter in the logs
+     * @param emit hands one item to the pipeline, called by one drain task at a time
+     * @param discard frees an item that will never be emitted
+     * @param dropped counts an item dropped by the policy
+     */
+    public PLMEmitter(String name, int capacity, Policy policy, Consumer<T> emit, Consumer<T> discard, Runnable dropped) {
+        this.queue = new PLMRingBuffer<>(capacity);
+        this.policy = policy;
+        this.emit = emit;
+        this.discard = discard;
+        this.dropped = dropped;
+        this.name = name;
+        this.space = new Semaphore(this.queue.capacity());
+    }
+
+    /**
+     * Queues an item for emission, waiting for space if the policy says so.
+     */
+    public void put(T item) throws InterruptedException {
+        if (!reserve(item)) {
+            return;
+        }
+        // the permit guarantees a free slot
+        this.queue.offer(item);
+        if (this.closed) {
+            discardQueued();
+        } else {
+            drain();
+        }
+    }
+
+    /**
+     * @return the number of items waiting for emission
+     */
+    public int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops emission and discards whatever is still queued, an item being emitted finishes.
+     */
+    public void close() {
+        this.closed = true;
+        // wakes every producer waiting for space
+        this.space.release(Integer.MAX_VALUE / 2);
+        discardQueued();
+    }
+
+    /**
+     * Takes a free slot for the item.
+     *
+     * @return false if the item was dropped or discarded instead
+     */
+    private boolean reserve(T item) throws InterruptedException {
+        while (true) {
+            if (this.closed) {
+                this.discard.accept(item);
+                return false;
+            }
+            if (this.policy == Policy.BLOCK) {
+                try {
+                    this.space.acquire();
+                } catch (InterruptedException e) {
+                    this.discard.accept(item);
+                    throw e;
+                }
+            } else if (!this.space.tryAcquire()) {
+                if (this.policy == Policy.DROP_NEWEST) {
+                    drop(item);
+                    return false;
+                }
+                T oldest = this.queue.poll();
+                if (oldest == null) {
+                    // the drain task took it and is about to free its slot
+                    Thread.yield();
+                    continue;
+                }
+                // the slot of the oldest item goes to the new one
+                drop(oldest);
+            }
+            if (this.closed) {
+                this.discard.accept(item);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private void drop(T item) {
+        this.dropped.run();
+        this.discard.accept(item);
+    }
+
+    private void discardQueued() {
+        T item;
+        while ((item = this.queue.poll()) != null) {
+            this.discard.accept(item);
+        }
+    }
+
+    /**
+     * Starts a drain task unless one is queued or running already.
+     */
+    private void drain() {
+        if (!this.queue.isEmpty() && this.draining.compareAndSet(false, true)) {
+            PLMScheduler.emit(this::emitQueued);
+        }
+    }
+
+    private void emitQueued() {
+        // a buffer full at most, then the task goes back to the end of the pool queue
+        for (int i = 0; i < this.queue.capacity() && !this.closed; i++) {
+            T item = this.queue.poll();
+            if (item == null) {
+                break;
+            }
+            this.space.release();
+            if (this.closed) {
+                this.discard.accept(item);
+                break;
+            }
+            try {
+                this.emit.accept(item);
+            } catch (RuntimeException e) {
+                logger.error("Error while emitting for " + this.name + ", continuing with the next window", e);
+            }
+        }
+        this.draining.set(false);
+        // an item put after the last poll but before the reset found the task still draining
+        if (this.closed) {
+            discardQueued();
+        } else {
+            drain();
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.gft.adapters.plm;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport shared by all PLM calls of the JVM: one bounded keep-alive connection pool with
+ * transparent gzip/deflate decoding, and a timeout policy per kind of endpoint.
+ */
+public class PLMHttpClient {
+
+    enum Endpoint {
+        LOGIN(10000, 30000, 2),
+        CATALOGUE(10000, 240000, 3),
+        WINDOW(10000, 120000, 3),
+        // the setup dialog waits for previews, so they give up early
+        PREVIEW(5000, 20000, 1);
+
+        private final RequestConfig config;
+        private final int retries;
+
+        Endpoint(int connect_timeout, int socket_timeout, int retries) {
+            this.config = RequestConfig.custom()
+                    .setConnectionRequestTimeout(connect_timeout)
+                    .setConnectTimeout(connect_timeout)
+                    .setSocketTimeout(socket_timeout)
+                    .build();
+            this.retries = retries;
+        }
+    }
+
+    /**
+     * Thrown for a response that carries no usable body.
+     */
+    public static class StatusException extends IOException {
+
+        private final int status;
+
+        public StatusException(StatusLine status_line) {
+            super("Server returned " + status_line);
+            this.status = status_line.getStatusCode();
+        }
+
+        public int getStatus() {
+            return this.status;
+        }
+
+        /**
+         * @return true if asking again cannot help, e.g. for an unknown sensor; failed logins
+         * and throttling are not permanent
+         */
+        public boolean isPermanent() {
+            return this.status >= 400 && this.status < 500 && this.status != HttpStatus.SC_UNAUTHORIZED
+                    && this.status != HttpStatus.SC_FORBIDDEN && this.status != HttpStatus.SC_REQUEST_TIMEOUT
+                    && this.status != 429;
+        }
+    }
+
+    /**
+     * The requests of one adapter, so that stopping it aborts the ones still connecting or
+     * reading instead of waiting for their socket timeout.
+     */
+    static class Requests {
+
+        private final Set<HttpRequestBase> active = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        private void add(HttpRequestBase request) {
+            this.active.add(request);
+            if (this.cancelled) {
+                request.abort();
+            }
+        }
+
+        private void remove(HttpRequestBase request) {
+            this.active.remove(request);
+        }
+
+        boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        void cancel() {
+            this.cancelled = true;
+            for (HttpRequestBase request : this.active) {
+                request.abort();
+            }
+        }
+    }
+
+    private static final long RETRY_BASE = 500;
+    private static final long RETRY_CAP = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int MAX_CONNECTIONS = 64;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 32;
+    private static final String TIMING = "plm.timing";
+
+    private static final CloseableHttpClient client;
+
+    static {
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        pool.setMaxTotal(MAX_CONNECTIONS);
+        pool.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        pool.setValidateAfterInactivity(10000);
+        // content compression (Accept-Encoding: gzip,deflate) is on by default
+        client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .evictExpiredConnections()
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .setRequestExecutor(new TimedExecutor())
+                .build();
+    }
+
+    public static CloseableHttpResponse get(String urlString, String token, Endpoint endpoint) throws IOException {
+        return get(urlString, token, endpoint, null);
+    }
+
+    /**
+     * Same as {@link #get(String, String, Endpoint)}, the request stays cancellable through requests
+     * until its response or content is closed.
+     */
+    static CloseableHttpResponse get(String urlString, String token, Endpoint endpoint, Requests requests) throws IOException {
+        HttpGet request = new HttpGet(urlString);
+        if (token != null && !token.equals("")) {
+            request.setHeader("Authorization", "Bearer " + token);
+        }
+        return execute(request, endpoint, requests);
+    }
+
+    public static CloseableHttpResponse post(String urlString, Endpoint endpoint) throws IOException {
+        return execute(new HttpPost(urlString), endpoint, null);
+    }
+
+    /**
+     * @return the body of a successful response; closing it hands the connection back to the pool
+     */
+    public static InputStream content(CloseableHttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= 300 || response.getEntity() == null) {
+            response.close();
+            throw new StatusException(response.getStatusLine());
+        }
+        return response.getEntity().getContent();
+    }
+
+    public static int status(HttpResponse response) {
+        return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * @return the pause in milliseconds the Retry-After header of a response asks for, 0 if none
+     */
+    public static long retryAfter(HttpResponse response) {
+        Header retry_after = response.getFirstHeader("Retry-After");
+        if (retry_after == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retry_after.getValue().trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Sends a request through the circuit breaker of its server. Connection failures and
+     * overloaded or failing servers (429, 5xx) are retried with jittered exponential backoff;
+     * once the retries are used up the last response is returned, or the last error thrown.
+     */
+    private static CloseableHttpResponse execute(HttpRequestBase request, Endpoint endpoint, Requests requests) throws IOException {
+        request.setConfig(endpoint.config);
+        request.setHeader("Content-Type", "application/json");
+        PLMCircuitBreaker breaker = PLMCircuitBreaker.of(request.getURI().getScheme() + "://" + request.getURI().getAuthority());
+        for (int attempt = 0; ; attempt++) {
+            breaker.acquire();
+            long retry_after = 0;
+            try {
+                CloseableHttpResponse response = send(request, endpoint, requests);
+                int status = status(response);
+                if (status != 429 && status < 500) {
+                    breaker.success();
+                    return response;
+                }
+                retry_after = retryAfter(response);
+                breaker.failure(retry_after);
+                if (attempt >= endpoint.retries) {
+                    return response;
+                }
+                response.close();
+            } catch (PLMCircuitBreaker.OpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (request.isAborted()) {
+                    throw e;
+                }
+                breaker.failure(0);
+                if (attempt >= endpoint.retries) {
+                    throw e;
+                }
+            }
+            PLMMetrics.http(endpoint).retried();
+            long backoff = Math.max(retry_after, ThreadLocalRandom.current().nextLong(Math.min(RETRY_CAP, RETRY_BASE << attempt) + 1));
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI().getPath());
+            }
+            request.reset();
+            if (requests != null && requests.isCancelled()) {
+                throw new InterruptedIOException("Request cancelled");
+            }
+        }
+    }
+
+    private static CloseableHttpResponse send(HttpRequestBase request, Endpoint endpoint, Requests requests) throws IOException {
+        if (requests != null) {
+            requests.add(request);
+        }
+        // every attempt counts against the request rate of the JVM
+        PLMScheduler.throttle();
+        if (Thread.currentThread().isInterrupted()) {
+            if (requests != null) {
+                requests.remove(request);
+            }
+            throw new InterruptedIOException("Interrupted while waiting to send " + request.getURI().getPath());
+        }
+        Timing timing = new Timing(endpoint);
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(TIMING, timing);
+        try {
+            CloseableHttpResponse response = client.execute(request, context);
+            timing.received(String.valueOf(status(response)));
+            return tracked(response, request, requests, timing);
+        } catch (IOException e) {
+            timing.received("error");
+            if (requests != null) {
+                requests.remove(request);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the response, timing its body until it is read to the end or closed and handing the
+     * request back to requests, if any, once the response or its content is closed
+     */
+    private static CloseableHttpResponse tracked(CloseableHttpResponse response, HttpRequestBase request, Requests requests,
+                                                 Timing timing) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public InputStream getContent() throws IOException {
+                    return new FilterInputStream(super.getContent()) {
+                        @Override
+                        public int read() throws IOException {
+                            return timing.read(super.read());
+                        }
+
+                        @Override
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            return timing.read(super.read(b, off, len));
+                        }
+
+                        @Override
+                        public void close() throws IOException {
+                            timing.read(-1);
+                            try {
+                                super.close();
+                            } finally {
+                                if (requests != null) {
+                                    requests.remove(request);
+                                }
+                            }
+                        }
+                    };
+                }
+            });
+        }
+        return new TrackedResponse(response, () -> {
+            timing.read(-1);
+            if (requests != null) {
+                requests.remove(request);
+            }
+        });
+    }
+
+    /**
+     * A response that runs a callback before closing the response it was copied from.
+     */
+    private static class TrackedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private final CloseableHttpResponse response;
+        private final Runnable closed;
+
+        private TrackedResponse(CloseableHttpResponse response, Runnable closed) {
+            super(response.getStatusLine());
+            setHeaders(response.getAllHeaders());
+            setEntity(response.getEntity());
+            this.response = response;
+            this.closed = closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.closed.run();
+            this.response.close();
+        }
+    }
+
+    /**
+     * Phases of one attempt: getting a connection from the pool, connecting if there is no idle
+     * one, then waiting for the response headers, then reading the body.
+     */
+    private static class Timing {
+
+        private final PLMMetrics.Http metrics;
+        private final long start = System.nanoTime();
+        private long connected;
+        private long received;
+        private boolean read;
+
+        private Timing(Endpoint endpoint) {
+            this.metrics = PLMMetrics.http(endpoint);
+        }
+
+        private void connected() {
+            if (this.connected == 0) {
+                this.connected = System.nanoTime();
+            }
+        }
+
+        private void received(String status) {
+            this.received = System.nanoTime();
+            this.metrics.request(status, this.received - this.start);
+            if (this.connected != 0) {
+                this.metrics.connected(this.connected - this.start);
+                this.metrics.headers(this.received - this.connected);
+            }
+        }
+
+        /**
+         * Records the body phase once the end of the body is reached or the response closed.
+         */
+        private int read(int result) {
+            if (result == -1 && !this.read) {
+                this.read = true;
+                this.metrics.body(System.nanoTime() - this.received);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Notes when a request got its connection, the client calls it once connected.
+     */
+    private static class TimedExecutor extends HttpRequestExecutor {
+
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection connection, HttpContext context)
+                throws IOException, HttpException {
+            Object timing = context.getAttribute(TIMING);
+            if (timing instanceof Timing) {
+                ((Timing) timing).connected();
+            }
+            return super.execute(request, connection, context);
+        }
+    }
+}
@@ -1,22 +1,50 @@
 package org.gft.adapters.plm;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PLMHttpConfig {
 
+    public static final String CURRENT_DATE_TIME = "CurrentDateTime";
+    public static final String DEFAULT_BASE_URL = "https://kyklos.jotne.com/EDMtruePLM/api/";
+    public static final String DEFAULT_REPOSITORY = "TruePLMprojectsRep";
+    public static final String DEFAULT_GROUP = "sdai-group";
+
+    public enum Mode {
+        // fetch from the server
+        LIVE,
+        // fetch from the server and append every window to the segment log
+        RECORD,
+        // emit the windows of the segment log, no server needed
+        REPLAY
+    }
+
     private final String model;
     private final String username;
     private final String password;
     private final String signal_name;
-    private String lowest_date;
-    private final String highest_date;
-    private boolean first_time = true;
-    DateFormat date_format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final long lowest_date;
+    private final long highest_date;
+    // end of the last window delivered
+    private volatile long cursor;
+    // end of the last window handed over for delivery, never behind the cursor
+    private volatile long fetch_cursor;
+    private int fetch_width = 1;
+    private long window_millis = 30 * 60 * 1000L;
+    private long poll_delay = 10;
+    private int batch_size = 1;
+    private long batch_linger = 1000;
+    private long aggregation_millis = 0;
+    private List<String> aggregation_functions = new ArrayList<>();
+    private volatile boolean live = false;
+    private Mode mode = Mode.LIVE;
+    private int replay_speed = 1;
+    private long tail_millis = 0;
+    private String base_url = DEFAULT_BASE_URL;
+    private String repository = DEFAULT_REPOSITORY;
+    private String group = DEFAULT_GROUP;
+    private int queue_capacity = 16;
+    private PLMEmitter.Policy queue_policy = PLMEmitter.Policy.BLOCK;
 
 
     public PLMHttpConfig(String username, String password, String model, String signal_name, String lowest_date, String highest_date) {
@@ -24,18 +52,23 @@ public class PLMHttpConfig {
         this.password = password;
         this.model = model;
         this.signal_name = signal_name;
-        this.lowest_date = lowest_date;
-        this.highest_date = highest_date;
-
+        // dates are parsed once here, the cursor works on epoch milliseconds only
+        this.lowest_date = PLMHttpUtils.toMillis(lowest_date);
+        this.highest_date = highest_date.equals(CURRENT_DATE_TIME) ? Long.MAX_VALUE : PLMHttpUtils.toMillis(highest_date);
+        this.cursor = this.lowest_date;
+        this.fetch_cursor = this.lowest_date;
     }
 
     public String getRepository(){
-        return "TruePLMprojectsRep";
+        return this.repository;
     }
-    public String getBaseUrl(){ return "https://kyklos.jotne.com/EDMtruePLM/api/"; }
+    public void setRepository(String repository){ this.repository = repository; }
+    public String getBaseUrl(){ return this.base_url; }
+    public void setBaseUrl(String base_url){ this.base_url = base_url.endsWith("/") ? base_url : base_url + "/"; }
     public String getGroup(){
-        return "sdai-group";
+        return this.group;
     }
+    public void setGroup(String group){ this.group = group; }
     public String getUsername() {
         return this.username;
     }
@@ -44,64 +77,141 @@ public class PLMHttpConfig {
     }
     public String getModel() {  return this.model;}
     public String getSignal() {  return this.signal_name;}
+    public List<String> getSignals() {
+        List<String> signals = new ArrayList<>();
+        for (String signal : this.signal_name.split(",")) {
+            if (!signal.trim().isEmpty()) {
+                signals.add(signal.trim());
+            }
+        }
+        return signals;
+    }
+    public int getFetchWidth() {  return this.fetch_width;}
+    public void setFetchWidth(int fetch_width) {  this.fetch_width = Math.max(1, fetch_width);}
+    public long getWindowMillis() {  return this.window_millis;}
+    public void setWindowMillis(long window_millis) {  this.window_millis = window_millis;}
+    public long getPollDelay() {  return this.poll_delay;}
+    public void setPollDelay(long poll_delay) {  this.poll_delay = Math.max(1, poll_delay);}
+    /**
+     * @return the number of samples emitted as one event, 1 emits every sample on its own
+     */
+    public int getBatchSize() {  return this.batch_size;}
+    public void setBatchSize(int batch_size) {  this.batch_size = Math.max(1, batch_size);}
+    public long getBatchLinger() {  return this.batch_linger;}
+    public void setBatchLinger(long batch_linger) {  this.batch_linger = Math.max(0, batch_linger);}
+    /**
+     * @return true if samples are downsampled into buckets before they are emitted
+     */
+    public boolean isAggregating() {  return this.aggregation_millis > 0 && !this.aggregation_functions.isEmpty();}
+    public long getAggregationMillis() {  return this.aggregation_millis;}
+    public void setAggregationMillis(long aggregation_millis) {  this.aggregation_millis = Math.max(0, aggregation_millis);}
+    public Mode getMode() {  return this.mode;}
+    public void setMode(Mode mode) {  this.mode = mode;}
+    /**
+     * @return how many times faster than recorded a replay runs, 0 for as fast as possible
+     */
+    public int getReplaySpeed() {  return this.replay_speed;}
+    public void setReplaySpeed(int replay_speed) {  this.replay_speed = Math.max(0, replay_speed);}
+    /**
+     * @return milliseconds between polls once live, 0 to poll every poll delay seconds instead
+     */
+    public long getTailMillis() {  return this.tail_millis;}
+    public void setTailMillis(long tail_millis) {  this.tail_millis = Math.max(0, tail_millis);}
+    public boolean isTailing() {  return this.tail_millis > 0 && this.live;}
+    /**
+     * @return how many fetched windows may wait for emission, 0 to emit on the polling thread
+     */
+    public int getQueueCapacity() {  return this.queue_capacity;}
+    public void setQueueCapacity(int queue_capacity) {  this.queue_capacity = Math.max(0, queue_capacity);}
+    public PLMEmitter.Policy getQueuePolicy() {  return this.queue_policy;}
+    public void setQueuePolicy(PLMEmitter.Policy queue_policy) {  this.queue_policy = queue_policy;}
+    public List<String> getAggregationFunctions() {  return this.aggregation_functions;}
+    public void setAggregationFunctions(List<String> aggregation_functions) {  this.aggregation_functions = new ArrayList<>(aggregation_functions);}
+    /**
+     * @return true once the last window was cut short by the wall clock or the highest date
+     */
+    public boolean isLive() {  return this.live;}
+
+    /**
+     * @return the configured start of the interval
+     */
+    public long getLowestDate() {  return this.lowest_date;}
+
+    /**
+     * @return the configured end of the interval, Long.MAX_VALUE for the current date time
+     */
+    public long getHighestDate() {  return this.highest_date;}
+
+    /**
+     * @return the end of the last window delivered
+     */
+    public long getCursor() {  return this.cursor;}
+
+    /**
+     * @return where the next window starts, ahead of the cursor while windows wait for delivery
+     */
+    public long getFetchCursor() {  return this.fetch_cursor;}
 
-    public String getHighestDate(){
-        return getMillis(highest_date);
+    /**
+     * @return the highest date, or the wall clock if it is earlier (always for CurrentDateTime)
+     */
+    public long getUpperBound() {
+        return Math.min(this.highest_date, System.currentTimeMillis());
     }
-     public String getLowestDate(){
-        return getMillis(lowest_date);
+
+    /**
+     * @return true once every window up to a fixed highest date was delivered, never for CurrentDateTime
+     */
+    public boolean isExhausted() {
+        return this.cursor >= this.highest_date;
     }
 
-    private String getMillis(String date){
-        String timestamp = null;
-        try{
-            Date myDate = date_format.parse(date);
-           timestamp = String.valueOf(myDate.getTime());
-        }catch (ParseException e){
-            e.printStackTrace();
-        }
-        return timestamp;
+    /**
+     * @return true once every window up to a fixed highest date was fetched, never for CurrentDateTime
+     */
+    public boolean isFetched() {
+        return this.fetch_cursor >= this.highest_date;
     }
 
-    public String NextDateTime() throws java.text.ParseException {
-        String date = " ";
-        if(this.lowest_date.compareToIgnoreCase(this.highest_date) >= 0){
-            return getMillis(this.highest_date);
-        }
-        try{
-            Date myDate = date_format.parse(this.lowest_date);
-            // convert date to localdatetime
-            LocalDateTime local_date_time = myDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
-            local_date_time = local_date_time.plusMinutes(30);
-            Date date_plus = Date.from(local_date_time.atZone(ZoneId.systemDefault()).toInstant());
-            date = date_format.format(date_plus);
-        }catch (ParseException e){
-            e.printStackTrace();
-        }
-        return getMillis(date);
+    public synchronized void moveTo(long millis){
+        this.cursor = millis;
+        this.fetch_cursor = millis;
+    }
+
+    /**
+     * Cuts the next window at the fetch cursor, clamped to the upper bound. The cursor stays where
+     * it is until the window was delivered, see {@link #advance(PLMTimeWindow)}.
+     */
+    public PLMTimeWindow nextWindow() {
+        long start = this.fetch_cursor;
+        long limit = getUpperBound();
+        this.live = start + this.window_millis >= limit;
+        return new PLMTimeWindow(start, Math.max(start, Math.min(start + this.window_millis, limit)));
     }
 
-    public String LastDateTime() throws java.text.ParseException {
-        String date = " ";
-        if(this.lowest_date.compareToIgnoreCase(this.highest_date) >= 0){
-            return getMillis(this.lowest_date);
+    /**
+     * Moves the fetch cursor to the end of a window handed over for delivery.
+     */
+    public synchronized void fetched(PLMTimeWindow window) {
+        if (window.getTo() > this.fetch_cursor) {
+            this.fetch_cursor = window.getTo();
         }
+    }
 
-        try{
-            Date myDate = date_format.parse(this.lowest_date);
-            // convert date to localdatetimeq
-            LocalDateTime local_date_time = myDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
-            if(this.first_time){
-                this.first_time = false;
-                local_date_time = local_date_time.minusMinutes(30);
-            }
-            local_date_time = local_date_time.plusMinutes(30);// 3.5 hours
-            Date date_plus = Date.from(local_date_time.atZone(ZoneId.systemDefault()).toInstant());
-            date = date_format.format(date_plus);
-            this.lowest_date = date;
-        }catch (ParseException e){
-            e.printStackTrace();
+    /**
+     * Moves the cursor to the end of a delivered window.
+     */
+    public synchronized void advance(PLMTimeWindow window) {
+        if (window.getTo() > this.cursor) {
+            this.cursor = window.getTo();
         }
-        return getMillis(date);
+        fetched(window);
+    }
+
+    /**
+     * Moves the fetch cursor back to the cursor, the windows after it are fetched again.
+     */
+    public synchronized void rewind() {
+        this.fetch_cursor = this.cursor;
     }
 }
@@ -17,10 +17,14 @@
  */
 
 package org.gft.adapters.plm;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
-import org.apache.http.client.fluent.Request;
+import io.micrometer.core.instrument.Meter;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.streampipes.connect.adapter.guess.SchemaGuesser;
 import org.apache.streampipes.connect.adapter.model.generic.Protocol;
+import org.apache.streampipes.connect.api.IAdapterPipeline;
 import org.apache.streampipes.connect.api.IFormat;
 import org.apache.streampipes.connect.api.IParser;
 import org.apache.streampipes.connect.api.exception.ParseException;
@@ -31,36 +35,127 @@ import org.apache.streampipes.model.schema.EventSchema;
 import org.apache.streampipes.sdk.builder.adapter.ProtocolDescriptionBuilder;
 import org.apache.streampipes.sdk.extractor.StaticPropertyExtractor;
 import org.apache.streampipes.sdk.helpers.AdapterSourceType;
+import org.apache.streampipes.sdk.helpers.EpProperties;
+import org.apache.streampipes.sdk.helpers.Labels;
 import org.apache.streampipes.sdk.helpers.Locales;
 import org.apache.streampipes.sdk.utils.Assets;
+import org.apache.streampipes.vocabulary.SO;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 public class PLMHttpStreamProtocol extends PLMPullProtocol {
-    private static final long interval = 10;
     Logger logger = LoggerFactory.getLogger(PLMHttpStreamProtocol.class);
     public static final String ID = "org.gft.adapters.plm";
     PLMHttpConfig config;
-    private String accessToken = null;
-    List<JSONObject> selected_sensors = new ArrayList<>();
+    PLMSensorCatalogue catalogue;
+    volatile List<PLMSignal> signals = new ArrayList<>();
+    PLMCheckpointStore checkpoints;
+    private final PLMWindowSizer sizer = new PLMWindowSizer();
+    private PLMMetrics.Window metrics;
+    // read by the polls for the live tail, replaced by the emitting thread
+    private volatile PLMDeduplicator deduplicator;
+    private PLMBatchEmitter batches;
+    private PLMAggregator aggregator;
+    private IAdapterPipeline stages;
+    private IAdapterPipeline stages_target;
+    private final Queue<PLMSampleBuffer> spare_buffers = new ConcurrentLinkedQueue<>();
+    private Meter lag;
+    private PLMSegmentLog recording;
+    private PLMScheduler.Handle replay;
+    private PLMScheduler.Lane lane;
+    private long tail_delay;
+    private PLMEmitter<Delivery> emitter;
+    private Meter queue;
+    private Meter readiness;
+    // tells the gauges of this instance apart from other adapters of the same model
+    private final String instance = PLMMetrics.instance();
+    // whether run() asked the token cache to keep refreshing the token
+    private boolean retained;
+    // set once the catalogue was loaded and the signals resolved
+    private volatile boolean ready;
+    // counts the rewinds after failed emissions, windows fetched before the last one are stale
+    private volatile int epoch;
+    private final Object rewinds = new Object();
+
+    /**
+     * The decoded window of every signal on its way from the fetch to the pipeline.
+     */
+    private static class Delivery {
+
+        private final PLMTimeWindow window;
+        private final PLMSampleBuffer[] data;
+        private final int epoch;
+        // signals whose checkpoint stays, so the next poll asks for their window again
+        private final BitSet failed = new BitSet();
+
+        private Delivery(PLMTimeWindow window, PLMSampleBuffer[] data, int epoch) {
+            this.window = window;
+            this.data = data;
+            this.epoch = epoch;
+        }
+    }
 
     public PLMHttpStreamProtocol() {
     }
 
     public PLMHttpStreamProtocol(IParser parser, IFormat format, PLMHttpConfig config) {
-        super(parser, format, interval);
+        super(parser, format, config.getPollDelay());
         this.config = config;
-        this.accessToken = login();
-        this.selected_sensors = getSelectedSensors();
+        this.lane = PLMScheduler.lane(config.getModel());
+        this.checkpoints = PLMCheckpointStore.of(config);
+        this.metrics = new PLMMetrics.Window(config);
+        this.recording = config.getMode() == PLMHttpConfig.Mode.RECORD ? PLMSegmentLog.of(config) : null;
+        // no request here: the server is first contacted by setup(), on the first fetch or preview
+    }
+
+    /**
+     * Loads the catalogue, resolves the signals and resumes from their checkpoints, once. Creating
+     * the adapter does not wait for the server; a failed setup is tried again by the next poll.
+     */
+    private synchronized void setup() throws ParseException {
+        if (this.ready) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        if (config.getMode() == PLMHttpConfig.Mode.REPLAY) {
+            // the recording knows its signals, replays never contact the server
+            this.catalogue = PLMSensorCatalogue.of(recordedSignals());
+            this.signals = matchSignals(this.catalogue);
+        } else {
+            this.catalogue = PLMSensorCatalogue.of(config, this::sensorsList);
+            this.signals = resolveSignals();
+            resume();
+        }
+        this.ready = true;
+        logger.info("Adapter of " + config.getModel() + " ready with " + this.signals.size() + " signals after "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public boolean isReady() {
+        return this.ready;
     }
 
     @Override
@@ -70,12 +165,26 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
                 .withLocales(Locales.EN)
                 .sourceType(AdapterSourceType.STREAM)
                 .category(AdapterType.Generic)
-                .requiredTextParameter(PLMHttpUtils.getUsernameLabel())
-                .requiredSecret(PLMHttpUtils.getPasswordLabel())
+                .requiredTextParameter(PLMHttpUtils.getBaseUrlLabel(), PLMHttpConfig.DEFAULT_BASE_URL)
+                .requiredTextParameter(PLMHttpUtils.getRepositoryLabel(), PLMHttpConfig.DEFAULT_REPOSITORY)
+                .requiredTextParameter(PLMHttpUtils.getGroupLabel(), PLMHttpConfig.DEFAULT_GROUP)
+                .requiredAlternatives(PLMHttpUtils.getCredentialsLabel(), PLMHttpUtils.getCredentials())
                 .requiredTextParameter(PLMHttpUtils.getModelLabel())
                 .requiredTextParameter(PLMHttpUtils.getSignalLabel())
                 .requiredTextParameter(PLMHttpUtils.getLowestLabel())
                 .requiredTextParameter(PLMHttpUtils.getHighestLabel())
+                .requiredIntegerParameter(PLMHttpUtils.getFetchWidthLabel(), 4)
+                .requiredIntegerParameter(PLMHttpUtils.getWindowLabel(), 30)
+                .requiredIntegerParameter(PLMHttpUtils.getPollDelayLabel(), 10)
+                .requiredIntegerParameter(PLMHttpUtils.getTailIntervalLabel(), 0)
+                .requiredIntegerParameter(PLMHttpUtils.getQueueCapacityLabel(), 16)
+                .requiredSingleValueSelection(PLMHttpUtils.getQueuePolicyLabel(), PLMHttpUtils.getQueuePolicies())
+                .requiredIntegerParameter(PLMHttpUtils.getBatchSizeLabel(), 1)
+                .requiredIntegerParameter(PLMHttpUtils.getBatchLingerLabel(), 1000)
+                .requiredIntegerParameter(PLMHttpUtils.getAggregationLabel(), 0)
+                .requiredMultiValueSelection(PLMHttpUtils.getAggregationFunctionsLabel(), PLMHttpUtils.getAggregationFunctions())
+                .requiredSingleValueSelection(PLMHttpUtils.getModeLabel(), PLMHttpUtils.getModes())
+                .requiredIntegerParameter(PLMHttpUtils.getReplaySpeedLabel(), 1)
                 .build();
     }
 
@@ -91,17 +200,27 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
     public GuessSchema getGuessSchema() throws ParseException {
         int n = 2;
 
-        InputStream dataInputStream;
-        dataInputStream = getDataFromEndpoint();
-
-        List<byte[]> dataByte = parser.parseNEvents(dataInputStream, n);
-        if (dataByte.size() < n) {
-            logger.error("Error in PLMHttpStreamProtocol! Required: " + n + " elements but the resource just had: " +
-                    dataByte.size());
+        PLMPreview preview = preview();
+        EventSchema eventSchema = preview.getSchema();
+        if (eventSchema == null) {
+            List<byte[]> dataByte = previewEvents(preview, n);
+            if (dataByte.size() < n) {
+                logger.error("Error in PLMHttpStreamProtocol! Required: " + n + " elements but the resource just had: " +
+                        dataByte.size());
 
-            dataByte.addAll(dataByte);
+                dataByte.addAll(dataByte);
+            }
+            eventSchema = parser.getEventSchema(dataByte);
+            preview.setSchema(eventSchema);
+        }
+        if (config.isAggregating()) {
+            eventSchema = PLMAggregator.aggregateSchema(eventSchema, config.getAggregationFunctions());
         }
-        EventSchema eventSchema = parser.getEventSchema(dataByte);
+        if (config.getBatchSize() > 1) {
+            eventSchema = PLMBatchEmitter.batchSchema(eventSchema);
+        }
+        eventSchema.addEventProperty(EpProperties.stringEp(Labels.withId(PLMSignal.SIGNAL_KEY), PLMSignal.SIGNAL_KEY, SO.Text));
+        eventSchema.addEventProperty(EpProperties.stringEp(Labels.withId(PLMSignal.URN_KEY), PLMSignal.URN_KEY, SO.Text));
 
         return SchemaGuesser.guessSchema(eventSchema);
     }
@@ -110,10 +229,8 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
     public List<Map<String, Object>> getNElements(int n) throws ParseException {
         List<Map<String, Object>> result = new ArrayList<>();
 
-        InputStream dataInputStream;
-        dataInputStream = getDataFromEndpoint();
-
-        List<byte[]> dataByte = parser.parseNEvents(dataInputStream, n);
+        List<byte[]> dataByte = previewEvents(preview(), n);
+        PLMSignal signal = this.signals.get(0);
 
         // Check that result size is n. Currently just an error is logged. Maybe change to an exception
         if (dataByte.size() < n) {
@@ -122,7 +239,16 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
         }
 
         for (byte[] b : dataByte) {
-            result.add(format.parse(b));
+            Map<String, Object> event = format.parse(b);
+            if (config.isAggregating()) {
+                event = PLMAggregator.asBucket(event, config.getAggregationFunctions());
+            }
+            if (config.getBatchSize() > 1) {
+                event = PLMBatchEmitter.asBatch(event);
+            }
+            event.put(PLMSignal.SIGNAL_KEY, signal.getName());
+            event.put(PLMSignal.URN_KEY, signal.getPlainUrn());
+            result.add(event);
         }
 
         return result;
@@ -133,69 +259,587 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
         return ID;
     }
 
-    @Override
     public InputStream getDataFromEndpoint() throws ParseException {
-        InputStream result = null;
-        if (this.accessToken == null) {
-            this.accessToken = login();
+        return preview().open();
+    }
+
+    /**
+     * @return at most n samples of a preview, at least one
+     */
+    private List<byte[]> previewEvents(PLMPreview preview, int n) throws ParseException {
+        List<byte[]> events = parser.parseNEvents(preview.open(), n);
+        if (events.isEmpty()) {
+            throw new ParseException("No samples of " + this.signals.get(0) + " in " + preview.getWindow()
+                    + ", choose a lowest date with data");
         }
-        String urlString = getUrl(this.selected_sensors);
+        return events;
+    }
 
-        if (config.getLowestDate().compareToIgnoreCase(config.getHighestDate()) >= 0) {
-            return null;
+    /**
+     * Fetches at most {@link PLMPreview#MAX_BYTES} of the next window of the first signal, unless
+     * a recent preview of it exists. Neither cursor nor checkpoints move, so the adapter started
+     * afterwards still delivers that window.
+     */
+    private PLMPreview preview() throws ParseException {
+        setup();
+        if (this.signals.isEmpty()) {
+            throw new ParseException("Nothing to preview, no sensor property of model " + config.getModel() + " matches: " + config.getSignal());
+        }
+        if (config.isExhausted()) {
+            throw new ParseException("Nothing to preview, no data left between lowest and highest date");
+        }
+        PLMSignal signal = this.signals.get(0);
+        PLMPreview preview = PLMPreview.get(config, signal);
+        if (preview != null) {
+            return preview;
+        }
+        if (config.getMode() == PLMHttpConfig.Mode.REPLAY) {
+            return replayPreview(signal);
+        }
+        PLMTimeWindow window = config.nextWindow();
+        boolean closed = PLMWindowCache.isClosed(window.getTo());
+        try {
+            preview = this.lane.call(() -> {
+                try (CloseableHttpResponse response = openWindow(signal, window, PLMHttpClient.Endpoint.PREVIEW)) {
+                    // closing the response before the end drops the connection instead of reading the rest
+                    byte[] head = read(PLMHttpClient.content(response), PLMPreview.MAX_BYTES + 1);
+                    boolean complete = head.length <= PLMPreview.MAX_BYTES;
+                    return new PLMPreview(window, head, complete && closed);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Error while previewing " + signal + " " + window, e);
+            throw new ParseException("Error while previewing " + signal + " " + window + ": " + e.getMessage(), e);
         }
+        PLMPreview.put(config, signal, preview);
+        return preview;
+    }
 
+    /**
+     * @return the first recorded window of a signal within the configured dates
+     */
+    private PLMPreview replayPreview(PLMSignal signal) throws ParseException {
         try {
-            // Set the URL of the API endpoint
-            URL url = new URL(urlString);
-            // Open a connection to the API endpoint
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("content-type", "application/json");
-            // Set the token in the HTTP header of the request
-            connection.setRequestProperty("Authorization", "Bearer " + this.accessToken);
-            connection.setRequestProperty("transfer-encoding", "chunked");
-            connection.setRequestProperty("connection", "keep-alive");
-            //connection.setDoOutput(true);
-            connection.setConnectTimeout(60000);
-            connection.setReadTimeout(120000);
-            // Send the GET request to the API endpoint
-            connection.connect();
-
-            if (this.accessToken != null) {
-                this.accessToken = null;
+            for (PLMSegmentLog.Entry entry : PLMSegmentLog.of(config).entries(config.getLowestDate(), config.getUpperBound())) {
+                if (entry.getSignal().equals(signal)) {
+                    try (InputStream data = entry.open()) {
+                        return new PLMPreview(entry.getWindow(), read(data, PLMPreview.MAX_BYTES), false);
+                    }
+                }
             }
+        } catch (IOException e) {
+            throw new ParseException("Could not read the recording of " + config.getModel() + ": " + e.getMessage(), e);
+        }
+        throw new ParseException("No recorded window of " + signal + " between lowest and highest date");
+    }
 
-            result = connection.getInputStream();
+    @Override
+    int emitWindow(IAdapterPipeline adapterPipeline) throws ParseException {
+        setup();
+        if (this.signals.isEmpty()) {
+            // the setup logged that no signal matched, the catalogue does not change while running
+            return EXHAUSTED;
+        }
+        if (config.isExhausted()) {
+            logger.info("Every window of " + config.getModel() + " up to the highest date was delivered");
+            return EXHAUSTED;
+        }
+        if (config.isFetched()) {
+            // the last windows wait for delivery, a failed one is fetched again after a rewind
+            return 0;
+        }
+        int epoch = this.epoch;
+        PLMTimeWindow window = config.nextWindow();
+
+        // fetch and decode all signals concurrently, the emitter hands them to the pipeline in order
+        List<Future<PLMSampleBuffer>> responses = new ArrayList<>();
+        for (PLMSignal signal : this.signals) {
+            long delivered = this.checkpoints.get(signal);
+            if (delivered >= window.getTo()) {
+                // delivered before a restart or a failed attempt at this window already
+                responses.add(null);
+                continue;
+            }
+            PLMTimeWindow rest = delivered > window.getFrom() ? new PLMTimeWindow(delivered, window.getTo()) : window;
+            PLMTimeWindow part = config.isTailing() ? tail(signal, rest) : rest;
+            // even a single signal takes its turn, so the fetch threads and the request rate bound every adapter
+            responses.add(this.lane.submit(() -> decode(signal, part)));
+        }
 
-        } catch (Exception e) {
-            // Handle any exceptions that occur
-            e.printStackTrace();
+        Delivery delivery = new Delivery(window, new PLMSampleBuffer[this.signals.size()], epoch);
+        int events = 0;
+        for (int i = 0; i < this.signals.size(); i++) {
+            Future<PLMSampleBuffer> response = responses.get(i);
+            if (response == null) {
+                continue;
+            }
+            try {
+                delivery.data[i] = response.get();
+                events += delivery.data[i].size();
+            } catch (ExecutionException e) {
+                metrics.failed();
+                Throwable cause = e.getCause() instanceof ParseException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof PLMHttpClient.StatusException && ((PLMHttpClient.StatusException) cause).isPermanent()) {
+                    // asking again will not help, skip the window of this signal instead of blocking all others
+                    logger.error("Skipping " + this.signals.get(i) + " " + window + ": " + cause.getMessage());
+                    continue;
+                }
+                delivery.failed.set(i);
+                logger.error("Error while fetching " + this.signals.get(i) + ": " + cause.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<PLMSampleBuffer> pending : responses) {
+                    if (pending != null) {
+                        pending.cancel(true);
+                    }
+                }
+                discard(delivery);
+                return -1;
+            }
         }
-        return result;
+        try {
+            deliver(delivery, adapterPipeline);
+        } catch (InterruptedException e) {
+            // stopped while waiting for space in the queue, the window was discarded
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        if (!delivery.failed.isEmpty()) {
+            // the fetch cursor stays, the next poll asks again for the signals that were not delivered
+            return -1;
+        }
+        // a stale window was discarded, the next poll fetches again from the cursor
+        return fetched(delivery) ? events : 0;
+    }
+
+    @Override
+    void backfill(IAdapterPipeline adapterPipeline) throws InterruptedException {
+        setup();
+        long window = config.getWindowMillis();
+        long from = config.getFetchCursor();
+        long until = config.getUpperBound();
+        if (config.getFetchWidth() < 2 || this.signals.isEmpty() || from + window > until) {
+            return;
+        }
+        PLMBackfill backfill = new PLMBackfill(this::fetchWindow, this.lane, config.getFetchWidth(), window);
+        // the present keeps moving while we catch up, so repeat until less than one window is left
+        while (from + window <= until) {
+            logger.info("Backfilling " + this.signals.size() + " signals from " + from + " to " + until);
+            int epoch = this.epoch;
+            long reached = backfill.run(from, until, (done, data) -> {
+                Delivery delivery = new Delivery(done, data, epoch);
+                deliver(delivery, adapterPipeline);
+                if (!fetched(delivery)) {
+                    throw new ParseException("Emission failed, fetching again from " + config.getCursor());
+                }
+            });
+            if (reached < until) {
+                break;
+            }
+            from = reached;
+            until = config.getUpperBound();
+        }
+    }
+
+    /**
+     * @return the part of a live window after the newest sample emitted of the signal. Samples the
+     * server received late are asked for again this way, the deduplicator drops the rest.
+     */
+    private PLMTimeWindow tail(PLMSignal signal, PLMTimeWindow part) {
+        long newest = this.deduplicator == null ? Long.MIN_VALUE : this.deduplicator.newest(signal);
+        if (newest == Long.MIN_VALUE || newest + 1 >= part.getTo()) {
+            return part;
+        }
+        return new PLMTimeWindow(Math.max(newest + 1, part.getTo() - config.getWindowMillis()), part.getTo());
+    }
+
+    @Override
+    long nextDelay(int events) {
+        long poll_delay = TimeUnit.SECONDS.toMillis(config.getPollDelay());
+        if (config.isTailing()) {
+            // empty polls back off towards the poll delay, the first sample brings the tail interval back
+            this.tail_delay = events > 0 ? config.getTailMillis() : Math.min(poll_delay, Math.max(config.getTailMillis(), this.tail_delay * 2));
+            return this.tail_delay;
+        }
+        if (config.isLive()) {
+            return poll_delay;
+        }
+        // still behind the wall clock: resize the window and fetch the next one right away
+        config.setWindowMillis(sizer.next(config.getWindowMillis(), events));
+        return 0;
+    }
+
+    @Override
+    public void run(IAdapterPipeline adapterPipeline) {
+        this.readiness = PLMMetrics.ready(config, this.instance, this);
+        if (config.getMode() == PLMHttpConfig.Mode.REPLAY) {
+            this.replay = PLMScheduler.schedule(() -> replay(adapterPipeline), 0);
+            return;
+        }
+        this.lag = PLMMetrics.lag(config, this.instance);
+        PLMTokenCache.retain(config);
+        this.retained = true;
+        if (config.getQueueCapacity() > 0) {
+            this.emitter = new PLMEmitter<>(config.getModel(), config.getQueueCapacity(), config.getQueuePolicy(),
+                    delivery -> emit(delivery, adapterPipeline), this::discard, metrics::overflowed);
+            this.queue = PLMMetrics.queue(config, this.instance, this.emitter);
+        }
+        super.run(adapterPipeline);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (this.replay != null) {
+            this.replay.cancel();
+        }
+        if (this.emitter != null) {
+            this.emitter.close();
+        }
+        if (this.recording != null) {
+            this.recording.close();
+        }
+        if (this.retained) {
+            this.retained = false;
+            PLMTokenCache.release(config);
+        }
+        PLMMetrics.remove(this.lag);
+        PLMMetrics.remove(this.queue);
+        PLMMetrics.remove(this.readiness);
+    }
+
+    /**
+     * Emits the recorded windows between lowest and highest date through the usual stages, at
+     * the configured replay speed.
+     */
+    private void replay(IAdapterPipeline adapterPipeline) {
+        PLMPacer pacer = new PLMPacer(adapterPipeline, config.getReplaySpeed());
+        long start = System.currentTimeMillis();
+        int events = 0;
+        try {
+            setup();
+            for (PLMSegmentLog.Entry entry : PLMSegmentLog.of(config).entries(config.getLowestDate(), config.getUpperBound())) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (this.signals.contains(entry.getSignal())) {
+                    events += emit(entry.open(), entry.getSignal(), entry.getWindow(), pacer);
+                }
+            }
+            logger.info("Replayed " + events + " samples of " + config.getModel() + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException | ParseException e) {
+            logger.error("Could not replay the recording of " + config.getModel() + ": " + e.getMessage());
+        }
+    }
+
+    private Collection<PLMSignal> recordedSignals() throws ParseException {
+        try {
+            return PLMSegmentLog.of(config).signals();
+        } catch (IOException e) {
+            throw new ParseException("Could not read the recording of " + config.getModel() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private int emit(InputStream data, PLMSignal signal, PLMTimeWindow window, IAdapterPipeline adapterPipeline) {
+        IAdapterPipeline head = stages(adapterPipeline);
+        this.deduplicator.select(signal);
+        if (this.aggregator != null) {
+            this.aggregator.select(signal);
+        }
+        try {
+            return metrics.record(data, counted -> sampleParser.parse(counted, signal, head));
+        } finally {
+            finish(signal, window);
+        }
+    }
+
+    private void emit(PLMSampleBuffer buffer, PLMSignal signal, PLMTimeWindow window, IAdapterPipeline adapterPipeline) {
+        long start = System.nanoTime();
+        stages(adapterPipeline);
+        this.deduplicator.filter(buffer, signal);
+        if (this.aggregator == null && this.batches != null) {
+            this.batches.emit(buffer, signal);
+        } else {
+            IAdapterPipeline head = this.deduplicator.getTarget();
+            if (this.aggregator != null) {
+                this.aggregator.select(signal);
+            }
+            for (int i = 0; i < buffer.size(); i++) {
+                head.process(buffer.row(i, signal));
+            }
+        }
+        finish(signal, window);
+        metrics.emitted(buffer.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Queues a fetched window for the emitter, or emits it right away without a queue.
+     */
+    private void deliver(Delivery delivery, IAdapterPipeline adapterPipeline) throws InterruptedException {
+        if (this.emitter == null) {
+            emit(delivery, adapterPipeline);
+        } else {
+            this.emitter.put(delivery);
+        }
+    }
+
+    /**
+     * Moves the fetch cursor past a delivery, unless a rewind made it stale.
+     *
+     * @return false if the delivery is stale
+     */
+    private boolean fetched(Delivery delivery) {
+        synchronized (this.rewinds) {
+            if (delivery.epoch != this.epoch) {
+                return false;
+            }
+            config.fetched(delivery.window);
+            return true;
+        }
+    }
+
+    /**
+     * Emits the window of every signal and moves their checkpoints, except for signals that failed,
+     * then moves the cursor if all signals were delivered. If the pipeline fails, the fetch cursor
+     * goes back to the cursor so the window is fetched again, and the windows fetched in between
+     * are discarded when their turn comes.
+     */
+    private void emit(Delivery delivery, IAdapterPipeline adapterPipeline) {
+        int i = 0;
+        try {
+            if (delivery.epoch != this.epoch) {
+                return;
+            }
+            for (; i < delivery.data.length; i++) {
+                if (delivery.failed.get(i)) {
+                    continue;
+                }
+                if (delivery.data[i] != null) {
+                    emit(delivery.data[i], this.signals.get(i), delivery.window, adapterPipeline);
+                }
+                this.checkpoints.commit(this.signals.get(i), delivery.window.getTo());
+            }
+            if (delivery.failed.isEmpty()) {
+                config.advance(delivery.window);
+            }
+        } catch (RuntimeException e) {
+            metrics.failed();
+            if (this.deduplicator != null) {
+                // the deduplicator took the whole window as seen before handing it on
+                this.deduplicator.forget(this.signals.get(i), delivery.window.getFrom());
+            }
+            synchronized (this.rewinds) {
+                this.epoch++;
+                config.rewind();
+            }
+            logger.error("Error while emitting " + delivery.window + ", fetching again from " + config.getCursor(), e);
+        } finally {
+            discard(delivery);
+        }
+    }
+
+    private void discard(Delivery delivery) {
+        for (PLMSampleBuffer buffer : delivery.data) {
+            if (buffer != null) {
+                release(buffer);
+            }
+        }
+    }
+
+    private void finish(PLMSignal signal, PLMTimeWindow window) {
+        if (this.aggregator != null) {
+            this.aggregator.close(signal, window.getTo());
+        }
+        if (this.batches != null) {
+            // a batch never spans two windows or two signals
+            this.batches.flush();
+        }
+    }
+
+    /**
+     * @return the first of the emission stages in front of the pipeline: deduplication, aggregation,
+     * then batching
+     */
+    private IAdapterPipeline stages(IAdapterPipeline adapterPipeline) {
+        if (this.stages_target != adapterPipeline) {
+            IAdapterPipeline head = adapterPipeline;
+            this.batches = config.getBatchSize() > 1 ? new PLMBatchEmitter(head, config.getBatchSize(), config.getBatchLinger()) : null;
+            if (this.batches != null) {
+                head = this.batches;
+            }
+            this.aggregator = config.isAggregating() ? new PLMAggregator(head, config.getAggregationMillis(), config.getAggregationFunctions()) : null;
+            if (this.aggregator != null) {
+                head = this.aggregator;
+            }
+            this.deduplicator = new PLMDeduplicator(head, metrics);
+            this.stages = this.deduplicator;
+            this.stages_target = adapterPipeline;
+        }
+        return this.stages;
+    }
+
+    /**
+     * Fetches a window of every signal and decodes it right away on the calling fetch thread, so
+     * only the columnar samples wait for their turn, not the response bodies.
+     */
+    private PLMSampleBuffer[] fetchWindow(PLMTimeWindow window) throws ParseException {
+        PLMSampleBuffer[] data = new PLMSampleBuffer[this.signals.size()];
+        for (int i = 0; i < data.length; i++) {
+            if (this.checkpoints.get(this.signals.get(i)) < window.getTo()) {
+                data[i] = decode(this.signals.get(i), window);
+            }
+        }
+        return data;
+    }
+
+    private PLMSampleBuffer decode(PLMSignal signal, PLMTimeWindow window) throws ParseException {
+        PLMSampleBuffer buffer = acquire();
+        try {
+            metrics.bytes(decode(signal, window, buffer));
+        } catch (RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    private PLMSampleBuffer acquire() {
+        PLMSampleBuffer buffer = this.spare_buffers.poll();
+        return buffer != null ? buffer : new PLMSampleBuffer(PLMHttpUtils.isOffHeapBuffers());
+    }
+
+    private void release(PLMSampleBuffer buffer) {
+        buffer.clear();
+        this.spare_buffers.offer(buffer);
+    }
+
+    /**
+     * Decodes one window of a signal into buffer, from a preview or the window cache if they have
+     * it, straight from the response otherwise. The body is only copied while decoding if the
+     * recording or the window cache keeps it.
+     *
+     * @return the size of the body in bytes
+     */
+    private long decode(PLMSignal signal, PLMTimeWindow window, PLMSampleBuffer buffer) throws ParseException {
+        String key = PLMWindowCache.key(config, signal, window);
+        boolean closed = PLMWindowCache.isClosed(window.getTo());
+        byte[] data = PLMPreview.take(config, signal, window);
+        if (data == null && closed) {
+            data = readCached(key, signal, window);
+        }
+        if (data != null) {
+            sampleParser.read(new ByteArrayInputStream(data), buffer);
+            if (this.recording != null) {
+                this.recording.append(signal, window, data);
+            }
+            return data.length;
+        }
+        try (CloseableHttpResponse response = openWindow(signal, window)) {
+            int status = PLMHttpClient.status(response);
+            if (status == 429 || status == 503) {
+                throw new PLMThrottledException("Server returned " + status + " for: " + signal + " " + window,
+                        PLMHttpClient.retryAfter(response));
+            }
+            boolean cache = closed && status == HttpStatus.SC_OK && PLMWindowCache.get().isEnabled();
+            Body body = new Body(PLMHttpClient.content(response), cache || this.recording != null);
+            sampleParser.read(body, buffer);
+            byte[] kept = body.rest();
+            if (this.recording != null) {
+                this.recording.append(signal, window, kept);
+            }
+            if (cache) {
+                PLMWindowCache.get().write(key, kept);
+            }
+            return body.count;
+        } catch (PLMHttpClient.StatusException e) {
+            throw new ParseException("Error while fetching " + signal + " " + window + ": " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw failed(signal, window, e);
+        } catch (ParseException e) {
+            // the parser wraps errors of the response stream along with malformed JSON
+            if (e.getCause() instanceof IOException && !(e.getCause() instanceof JsonProcessingException)) {
+                throw failed(signal, window, (IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private ParseException failed(PLMSignal signal, PLMTimeWindow window, IOException e) {
+        if (this.requests.isCancelled()) {
+            return new ParseException("Adapter stopped while fetching " + signal + " " + window, e);
+        }
+        logger.error("Error while fetching " + signal + " " + window, e);
+        return new ParseException("Error while fetching " + signal + " " + window, e);
+    }
+
+    /**
+     * @return the cached body of a closed window, null if it is not cached or unreadable
+     */
+    private byte[] readCached(String key, PLMSignal signal, PLMTimeWindow window) {
+        InputStream cached = PLMWindowCache.get().read(key);
+        if (cached == null) {
+            return null;
+        }
+        try (InputStream data = cached) {
+            return read(data, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            logger.warn("Could not read cached " + signal + " " + window + ", fetching it again: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return at most limit bytes of a stream
+     */
+    private static byte[] read(InputStream data, int limit) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while (buffer.size() < limit && (read = data.read(chunk, 0, Math.min(chunk.length, limit - buffer.size()))) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Requests one window of a signal, logging in again once if the cached token was rejected.
+     */
+    private CloseableHttpResponse openWindow(PLMSignal signal, PLMTimeWindow window) throws IOException {
+        return openWindow(signal, window, PLMHttpClient.Endpoint.WINDOW);
+    }
+
+    private CloseableHttpResponse openWindow(PLMSignal signal, PLMTimeWindow window, PLMHttpClient.Endpoint endpoint) throws IOException {
+        String token = token();
+        CloseableHttpResponse response = PLMHttpClient.get(getUrl(signal, token, window), token, endpoint, this.requests);
+        if (PLMHttpClient.status(response) == HttpStatus.SC_UNAUTHORIZED) {
+            response.close();
+            PLMTokenCache.invalidate(config, token);
+            token = token();
+            response = PLMHttpClient.get(getUrl(signal, token, window), token, endpoint, this.requests);
+        }
+        return response;
+    }
+
+    private String token() throws ParseException {
+        return PLMTokenCache.token(config, this::login);
     }
 
     private String login() throws ParseException {
-        String urlString, response, token;
+        String urlString, token;
         urlString = config.getBaseUrl() + "admin/token?group=" + config.getGroup() + "&pass=" + config.getPassword() + "&user=" + config.getUsername();
         if (urlString.contains(" "))
             urlString = urlString.replace(" ", "%20");
 
+        String url = urlString;
         try {
-            Request request = Request.Post(urlString)
-                    .connectTimeout(120000)
-                    .socketTimeout(120000)
-                    .setHeader("Content-Type", "application/json");
-
-            response = request
-                    .execute().returnContent().toString();
-            if (response == null)
-                throw new ParseException("Could not receive Data from file: " + urlString);
-            // Parse the JSON string as a JSON object
-            JSONObject json_object = new JSONObject(response);
-            // Access the data in the JSON object
-            token = json_object.getString("token");
-
+            token = this.lane.call(() -> {
+                try (CloseableHttpResponse response = PLMHttpClient.post(url, PLMHttpClient.Endpoint.LOGIN)) {
+                    // Parse the JSON body as a JSON object
+                    JSONObject json_object = new JSONObject(new JSONTokener(PLMHttpClient.content(response)));
+                    // Access the data in the JSON object
+                    return json_object.getString("token");
+                }
+            });
         } catch (Exception e) {
             logger.error("Error while fetching data from URL: " + urlString, e);
             throw new ParseException("Error while fetching data from URL: " + urlString);
@@ -205,105 +849,161 @@ public class PLMHttpStreamProtocol extends PLMPullProtocol {
 
 
     private JSONArray sensorsList() throws ParseException {
-        String response, urlString;
+        String urlString, token = token();
         // Set the URL of the API endpoint
-        urlString = config.getBaseUrl() + "bkd/q_search/" + config.getRepository() + "/" + config.getModel() + "/" + this.accessToken + "?case_sens=false&domains=PROPERTY&folder_only=false&pattern=*";
+        urlString = config.getBaseUrl() + "bkd/q_search/" + config.getRepository() + "/" + config.getModel() + "/" + token + "?case_sens=false&domains=PROPERTY&folder_only=false&pattern=*";
         if (urlString.contains(" "))
             urlString = urlString.replace(" ", "%20");
 
+        String url = urlString;
         try {
-            Request request = Request.Get(urlString)
-                    .connectTimeout(1000)
-                    .socketTimeout(240000)
-                    .setHeader("Content-Type", "application/json");
-
-            if (this.accessToken != null && !this.accessToken.equals("")) {
-                request.setHeader("Authorization", "Bearer " + this.accessToken);
-            }
-            response = request
-                    .execute().returnContent().toString();
-            if (response == null)
-                throw new ParseException("Could not receive Data from file: " + urlString);
-
+            return this.lane.call(() -> {
+                try (CloseableHttpResponse response = PLMHttpClient.get(url, token, PLMHttpClient.Endpoint.CATALOGUE)) {
+                    // tokenize the body while it arrives instead of copying it into a String first
+                    return new JSONArray(new JSONTokener(PLMHttpClient.content(response)));
+                }
+            });
         } catch (Exception e) {
             logger.error("Error while fetching data from URL: " + urlString, e);
             throw new ParseException("Error while fetching data from URL: " + urlString);
         }
-        return new JSONArray(response);
     }
 
-    private static boolean checkIfDigit(String val_part) {
-        boolean isNumber = true;
-        for (int i = 0; i < val_part.length(); i++) {
-            char ch = val_part.charAt(i);
-            if (!Character.isDigit(ch)) {
-                isNumber = false;
-                break;
-            }
+    /**
+     * Moves the cursor to the oldest checkpoint of the selected signals, signals without one
+     * start at the configured lowest date.
+     */
+    private void resume() {
+        if (this.signals.isEmpty()) {
+            return;
+        }
+        long lowest = config.getLowestDate();
+        long resume = Long.MAX_VALUE;
+        for (PLMSignal signal : this.signals) {
+            resume = Math.min(resume, Math.max(lowest, this.checkpoints.get(signal)));
+        }
+        if (resume > lowest) {
+            logger.info("Resuming " + config.getModel() + " from checkpoint " + resume);
+            config.moveTo(resume);
+        }
+    }
+
+    /**
+     * Matches the configured signal entries against the catalogue. Every entry is a glob on the
+     * sensor name, optionally followed by "/" and a glob on the property URN; without a URN glob
+     * the first property of each matching sensor is used.
+     */
+    private List<PLMSignal> resolveSignals() {
+        List<PLMSignal> signals = matchSignals(this.catalogue);
+        if (signals.isEmpty()) {
+            // the cached catalogue may predate the sensor, look again before giving up
+            this.catalogue = PLMSensorCatalogue.refresh(config, this::sensorsList);
+            signals = matchSignals(this.catalogue);
+        }
+        if (signals.isEmpty()) {
+            logger.error("No sensor property of model " + config.getModel() + " matches: " + config.getSignal());
         }
-        return isNumber;
-    }
-
-    private List<JSONObject> getSelectedSensors() {
-        JSONArray sensor_properties;
-        JSONObject sensor, element_info, json_selected_sensor;
-        String string_selected_sensor;
-        List<JSONObject> selected_sensors = new ArrayList<>();
-        JSONArray sensors = sensorsList();
-
-        for (int i = 0; i < sensors.length(); i++) {
-            sensor = sensors.getJSONObject(i);
-            element_info = sensor.getJSONObject("bkdn_elem_info");
-            sensor_properties = element_info.getJSONArray("properties");
-            int num_of_property = sensor_properties.length();
-
-            if (num_of_property > 1) {
-                JSONArray selected_properties = new JSONArray();
-                for (int j = 0; j < num_of_property; j++) {
-                    JSONObject property = sensor_properties.getJSONObject(j);
-                    String[] val_parts = property.getString("val").split(" ");
-                    boolean number_of_items = checkIfDigit(val_parts[0]);
-                    if (val_parts.length == 2 && val_parts[1].equals("items") && number_of_items) {
-                        String urn = property.getString("name");
-                        if (urn.contains(":"))
-                            urn = urn.replace(":", "%3A");
-                        String json_string = "{\"urn\": \"" + urn + "\"," + "\"num\": " +
-                                Integer.parseInt(val_parts[0]) + "}";
-                        JSONObject json_object = new JSONObject(json_string);
-                        selected_properties.put(json_object);
+        return signals;
+    }
+
+    private List<PLMSignal> matchSignals(PLMSensorCatalogue catalogue) {
+        Set<PLMSignal> signals = new LinkedHashSet<>();
+        for (String entry : config.getSignals()) {
+            String[] parts = entry.split("/", 2);
+            String name = parts[0].trim();
+            Pattern urn = parts.length > 1 ? PLMSignal.glob(parts[1].trim()) : null;
+            Collection<PLMSensorCatalogue.Sensor> sensors;
+            if (name.contains("*") || name.contains("?")) {
+                sensors = new ArrayList<>();
+                Pattern pattern = PLMSignal.glob(name);
+                for (PLMSensorCatalogue.Sensor sensor : catalogue.sensors()) {
+                    if (pattern.matcher(sensor.getName()).matches()) {
+                        sensors.add(sensor);
+                    }
+                }
+            } else {
+                PLMSensorCatalogue.Sensor sensor = catalogue.get(name);
+                sensors = sensor == null ? Collections.<PLMSensorCatalogue.Sensor>emptyList() : Collections.singletonList(sensor);
+            }
+            for (PLMSensorCatalogue.Sensor sensor : sensors) {
+                for (String property : sensor.getUrns()) {
+                    PLMSignal signal = new PLMSignal(sensor.getName(), sensor.getId(), property);
+                    if (urn == null || urn.matcher(signal.getPlainUrn()).matches()) {
+                        signals.add(signal);
+                        if (urn == null) {
+                            break;
+                        }
                     }
                 }
-                string_selected_sensor = "{\"name\": \"" + element_info.get("name") + "\"," + "\"id\": \"" +
-                        element_info.get("instance_id") + "\"," + "\"props\": " + selected_properties + "}";
-                json_selected_sensor = new JSONObject(string_selected_sensor);
-                selected_sensors.add(json_selected_sensor);
             }
         }
-        return selected_sensors;
+        return new ArrayList<>(signals);
     }
 
-    private String getUrl(List<JSONObject> selected_sensors) {
-        String urn, urlString = null;
-        for (JSONObject sensor : selected_sensors) {
-            if (sensor.get("name").equals(config.getSignal())) {
-                urn = sensor.getJSONArray("props").getJSONObject(0).getString("urn");
+    String getUrl(PLMSignal signal, String token, PLMTimeWindow window) {
+        String urlString = config.getBaseUrl() + "bkd/aggr_exp_dt/" + config.getRepository() + "/" + config.getModel() + "/" + signal.getId() + "/" + signal.getUrn() + "/"
+                + token + "/" + "?format=json" + "&from=" + window.getFrom() + "&to=" + window.getTo();
+        //replace spaces by "%20" and the two points by %3A to avoid 400 Bad Request
+        if (urlString.contains(" "))
+            urlString = urlString.replace(" ", "%20");
+        return urlString;
+    }
+
+    /**
+     * Response body being decoded, counted and copied if it is kept.
+     */
+    private static class Body extends FilterInputStream {
+
+        private final ByteArrayOutputStream copy;
+        private long count;
 
-                try {
-                    String first_date = config.LastDateTime();
-                    String second_date = config.NextDateTime();
-                    urlString = config.getBaseUrl() + "bkd/aggr_exp_dt/" + config.getRepository() + "/" + config.getModel() + "/" + sensor.get("id") + "/" + urn + "/"
-                            + this.accessToken + "/" + "?format=json" + "&from=" + first_date + "&to=" + second_date;
-                    //replace spaces by "%20" and the two points by %3A to avoid 400 Bad Request
-                    if (urlString.contains(" "))
-                        urlString = urlString.replace(" ", "%20");
+        private Body(InputStream data, boolean keep) {
+            super(data);
+            this.copy = keep ? new ByteArrayOutputStream() : null;
+        }
 
-                } catch (java.text.ParseException e) {
-                    e.printStackTrace();
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+                if (this.copy != null) {
+                    this.copy.write(b);
                 }
-                break;
             }
+            return b;
         }
-        return urlString;
-    }
 
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+                if (this.copy != null) {
+                    this.copy.write(b, off, read);
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Leaves the response open for {@link #rest()}, the parser closes its source when done.
+         */
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Reads whatever the parser left, so the connection can be reused.
+         *
+         * @return the whole body if it is kept, null otherwise
+         */
+        private byte[] rest() throws IOException {
+            byte[] chunk = new byte[8192];
+            while (read(chunk, 0, chunk.length) != -1) {
+                // counted and copied by read
+            }
+            return this.copy != null ? this.copy.toByteArray() : null;
+        }
+    }
 }
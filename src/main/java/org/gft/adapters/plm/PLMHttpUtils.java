@@ -1,22 +1,86 @@
 package org.gft.adapters.plm;
 
+import org.apache.streampipes.connect.api.exception.ParseException;
+import org.apache.streampipes.model.staticproperty.Option;
+import org.apache.streampipes.model.staticproperty.StaticPropertyAlternative;
+import org.apache.streampipes.sdk.StaticProperties;
 import org.apache.streampipes.sdk.extractor.StaticPropertyExtractor;
+import org.apache.streampipes.sdk.helpers.Alternatives;
 import org.apache.streampipes.sdk.helpers.Label;
 import org.apache.streampipes.sdk.helpers.Labels;
+import org.apache.streampipes.sdk.helpers.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class PLMHttpUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(PLMHttpUtils.class);
+
     //private static final String LENGTH = "length";
+    private static final String BASE_URL = "base_url";
+    private static final String REPOSITORY = "repository";
+    private static final String GROUP = "group";
     private static final String LOWEST_DATE = "lowest_date";
     private static final String HIGHEST_DATE = "highest_date";
     private static final String SENSOR_SIGNAL = "signal";
+    private static final String FETCH_WIDTH = "fetch_width";
+    private static final String WINDOW = "window";
+    private static final String POLL_DELAY = "poll_delay";
+    private static final String BATCH_SIZE = "batch_size";
+    private static final String BATCH_LINGER = "batch_linger";
+    private static final String AGGREGATION = "aggregation";
+    private static final String AGGREGATION_FUNCTIONS = "aggregation_functions";
+    private static final String MODE = "mode";
+    private static final String REPLAY_SPEED = "replay_speed";
+    private static final String TAIL_INTERVAL = "tail_interval";
+    private static final String QUEUE_CAPACITY = "queue_capacity";
+    private static final String QUEUE_POLICY = "queue_policy";
+    private static final String CREDENTIALS = "credentials";
+    private static final String LOGIN = "login";
+    private static final String NO_LOGIN = "no_login";
     public static final String USERNAME_KEY = "username";
     public static final String PASSWORD_KEY = "password";
     public static final String MODEL_NAME = "model";
-    private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    public static final String DATA_DIRECTORY = "PLM_DATA_DIR";
+    public static final String WINDOW_CACHE_SIZE = "PLM_WINDOW_CACHE_MB";
+    private static final long DEFAULT_WINDOW_CACHE_SIZE = 512;
+    public static final String METRICS_PORT = "PLM_METRICS_PORT";
+    private static final int DEFAULT_METRICS_PORT = 8091;
+    public static final String FETCH_THREADS = "PLM_FETCH_THREADS";
+    public static final String OFF_HEAP_BUFFERS = "PLM_OFF_HEAP_BUFFERS";
+    private static final int DEFAULT_FETCH_THREADS = 32;
+    public static final String FETCH_RATE = "PLM_FETCH_RATE";
+    public static final String MESSAGING_FORMATS = "PLM_MESSAGING_FORMATS";
+    private static final String DEFAULT_MESSAGING_FORMATS = "json,cbor,smile,fst";
+    public static final String MESSAGING_PROTOCOLS = "PLM_MESSAGING_PROTOCOLS";
+    private static final String DEFAULT_MESSAGING_PROTOCOLS = "kafka,jms,mqtt";
+    // strict resolving rejects 30 February and friends, DateTimeFormatter is immutable and thread-safe
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    public static Label getBaseUrlLabel() {
+        return Labels.withId(BASE_URL);
+    }
+
+    public static Label getRepositoryLabel() {
+        return Labels.withId(REPOSITORY);
+    }
+
+    public static Label getGroupLabel() {
+        return Labels.withId(GROUP);
+    }
 
     public static Label getUsernameLabel() {
         return Labels.withId(USERNAME_KEY);
@@ -26,6 +90,21 @@ public class PLMHttpUtils {
         return Labels.withId(PASSWORD_KEY);
     }
 
+    public static Label getCredentialsLabel() {
+        return Labels.withId(CREDENTIALS);
+    }
+
+    /**
+     * @return log in with username and password (preselected), or not at all for replays
+     */
+    public static StaticPropertyAlternative[] getCredentials() {
+        return new StaticPropertyAlternative[]{
+                Alternatives.from(Labels.withId(LOGIN), StaticProperties.group(Labels.withId("login_group"),
+                        StaticProperties.stringFreeTextProperty(getUsernameLabel()),
+                        StaticProperties.secretValue(getPasswordLabel())), true),
+                Alternatives.from(Labels.withId(NO_LOGIN))};
+    }
+
     public static Label getModelLabel() {
         return Labels.withId(MODEL_NAME);
     }
@@ -42,32 +121,229 @@ public class PLMHttpUtils {
         return Labels.withId(HIGHEST_DATE);
     }
 
-    public static PLMHttpConfig getConfig(StaticPropertyExtractor extractor) {
+    public static Label getFetchWidthLabel() {
+        return Labels.withId(FETCH_WIDTH);
+    }
 
-        String username = extractor.singleValueParameter(USERNAME_KEY, String.class).trim();
-        String password = extractor.secretValue(PASSWORD_KEY);
-        String model = extractor.singleValueParameter(MODEL_NAME, String.class).trim();
-        String signal_name = extractor.singleValueParameter(SENSOR_SIGNAL, String.class).trim();
-        String lowest_date = extractor.singleValueParameter(LOWEST_DATE, String.class).trim();//TODO .strip
-        String highest_date = extractor.singleValueParameter(HIGHEST_DATE, String.class).trim();//TODO .strip
+    public static Label getWindowLabel() {
+        return Labels.withId(WINDOW);
+    }
+
+    public static Label getPollDelayLabel() {
+        return Labels.withId(POLL_DELAY);
+    }
+
+    public static Label getBatchSizeLabel() {
+        return Labels.withId(BATCH_SIZE);
+    }
+
+    public static Label getBatchLingerLabel() {
+        return Labels.withId(BATCH_LINGER);
+    }
+
+    public static Label getAggregationLabel() {
+        return Labels.withId(AGGREGATION);
+    }
+
+    public static Label getAggregationFunctionsLabel() {
+        return Labels.withId(AGGREGATION_FUNCTIONS);
+    }
+
+    public static Label getTailIntervalLabel() {
+        return Labels.withId(TAIL_INTERVAL);
+    }
+
+    public static Label getQueueCapacityLabel() {
+        return Labels.withId(QUEUE_CAPACITY);
+    }
+
+    public static Label getQueuePolicyLabel() {
+        return Labels.withId(QUEUE_POLICY);
+    }
+
+    public static Label getModeLabel() {
+        return Labels.withId(MODE);
+    }
+
+    public static Label getReplaySpeedLabel() {
+        return Labels.withId(REPLAY_SPEED);
+    }
+
+    /**
+     * @return the modes to choose from, live preselected
+     */
+    public static List<Option> getModes() {
+        List<Option> options = Options.from("live", "record", "replay");
+        options.get(0).setSelected(true);
+        return options;
+    }
+
+    /**
+     * @return what to do while the emission queue is full, block preselected
+     */
+    public static List<Option> getQueuePolicies() {
+        List<Option> options = Options.from("block", "drop_oldest", "drop_newest");
+        options.get(0).setSelected(true);
+        return options;
+    }
+
+    /**
+     * @return the aggregation functions to choose from, mean preselected
+     */
+    public static List<Option> getAggregationFunctions() {
+        List<Option> options = Options.from("min", "max", "mean", "last", "count");
+        for (Option option : options) {
+            option.setSelected(option.getName().equals("mean"));
+        }
+        return options;
+    }
+
+    /**
+     * @return the directory for state kept across restarts, PLM_DATA_DIR or a folder in java.io.tmpdir
+     */
+    public static Path getDataDirectory() {
+        String directory = System.getenv(DATA_DIRECTORY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "plm-adapter");
+        }
+        return Paths.get(directory.trim());
+    }
+
+    /**
+     * @return the size budget of the window cache from PLM_WINDOW_CACHE_MB, 0 disables the cache
+     */
+    public static long getWindowCacheBytes() {
+        return getNumber(WINDOW_CACHE_SIZE, Long::parseLong, DEFAULT_WINDOW_CACHE_SIZE) * 1024 * 1024;
+    }
+
+    /**
+     * @return the port of the metrics scrape endpoint from PLM_METRICS_PORT, 0 disables it
+     */
+    public static int getMetricsPort() {
+        return getNumber(METRICS_PORT, Integer::parseInt, DEFAULT_METRICS_PORT);
+    }
+
+    /**
+     * @return the number of requests all adapters of the JVM run at once, from PLM_FETCH_THREADS
+     */
+    public static int getFetchThreads() {
+        return Math.max(1, getNumber(FETCH_THREADS, Integer::parseInt, DEFAULT_FETCH_THREADS));
+    }
 
-        if(!highest_date.equals("CurrentDateTime")){
-            try {
-                sdf.parse(highest_date);
-                sdf.setLenient(false);            // strict mode - check 30 or 31 days, leap year
-            } catch (ParseException e) {
-                e.printStackTrace();
+    /**
+     * @return the requests per second all adapters of the JVM send at most, from PLM_FETCH_RATE, 0 for no limit
+     */
+    public static double getFetchRate() {
+        return Math.max(0, getNumber(FETCH_RATE, Double::parseDouble, 0.0));
+    }
+
+    /**
+     * @return the parsed environment variable, or the fallback if it is unset or not a number
+     */
+    private static <T extends Number> T getNumber(String variable, Function<String, T> parse, T fallback) {
+        String value = System.getenv(variable);
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        try {
+            return parse.apply(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring " + variable + "=" + value + ", not a number, using " + fallback + " instead");
+            return fallback;
+        }
+    }
+
+    /**
+     * @return the messaging formats the service registers, from PLM_MESSAGING_FORMATS, all by default
+     */
+    public static List<String> getMessagingFormats() {
+        return getNames(MESSAGING_FORMATS, DEFAULT_MESSAGING_FORMATS);
+    }
+
+    /**
+     * @return the messaging protocols the service registers, from PLM_MESSAGING_PROTOCOLS, all by default
+     */
+    public static List<String> getMessagingProtocols() {
+        return getNames(MESSAGING_PROTOCOLS, DEFAULT_MESSAGING_PROTOCOLS);
+    }
+
+    private static List<String> getNames(String variable, String defaults) {
+        String names = System.getenv(variable);
+        if (names == null || names.trim().isEmpty()) {
+            names = defaults;
+        }
+        List<String> list = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                list.add(name.trim().toLowerCase());
             }
         }
+        return list;
+    }
+
+    /**
+     * @return true if PLM_OFF_HEAP_BUFFERS asks for sample buffers in direct memory
+     */
+    public static boolean isOffHeapBuffers() {
+        return Boolean.parseBoolean(System.getenv(OFF_HEAP_BUFFERS));
+    }
 
+    /**
+     * @return the epoch milliseconds of a date like 2022-07-21 00:00:00 in the local time zone
+     */
+    public static long toMillis(String date) throws ParseException {
         try {
-            sdf.parse(lowest_date);
-            sdf.setLenient(false);            // strict mode - check 30 or 31 days, leap year
-        } catch (ParseException e) {
-            e.printStackTrace();
+            return LocalDateTime.parse(date.trim(), DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ParseException("Invalid date, expected YYYY-MM-DD HH:mm:ss: " + date, e);
         }
+    }
+
+    public static PLMHttpConfig getConfig(StaticPropertyExtractor extractor) {
 
-        return new PLMHttpConfig(username, password, model, signal_name, lowest_date, highest_date);
+        String base_url = extractor.singleValueParameter(BASE_URL, String.class).trim();
+        String repository = extractor.singleValueParameter(REPOSITORY, String.class).trim();
+        String group = extractor.singleValueParameter(GROUP, String.class).trim();
+        boolean login = LOGIN.equals(extractor.selectedAlternativeInternalId(CREDENTIALS));
+        String username = login ? extractor.singleValueParameter(USERNAME_KEY, String.class).trim() : "";
+        String password = login ? extractor.secretValue(PASSWORD_KEY) : "";
+        String model = extractor.singleValueParameter(MODEL_NAME, String.class).trim();
+        String signal_name = extractor.singleValueParameter(SENSOR_SIGNAL, String.class).trim();
+        String lowest_date = extractor.singleValueParameter(LOWEST_DATE, String.class).trim();//TODO .strip
+        String highest_date = extractor.singleValueParameter(HIGHEST_DATE, String.class).trim();//TODO .strip
+        int fetch_width = extractor.singleValueParameter(FETCH_WIDTH, Integer.class);
+        int window = extractor.singleValueParameter(WINDOW, Integer.class);
+        int poll_delay = extractor.singleValueParameter(POLL_DELAY, Integer.class);
+        int batch_size = extractor.singleValueParameter(BATCH_SIZE, Integer.class);
+        int batch_linger = extractor.singleValueParameter(BATCH_LINGER, Integer.class);
+        int aggregation = extractor.singleValueParameter(AGGREGATION, Integer.class);
+        List<String> aggregation_functions = extractor.selectedMultiValues(AGGREGATION_FUNCTIONS, String.class);
+        String mode = extractor.selectedSingleValue(MODE, String.class);
+        int replay_speed = extractor.singleValueParameter(REPLAY_SPEED, Integer.class);
+        int tail_interval = extractor.singleValueParameter(TAIL_INTERVAL, Integer.class);
+        int queue_capacity = extractor.singleValueParameter(QUEUE_CAPACITY, Integer.class);
+        String queue_policy = extractor.selectedSingleValue(QUEUE_POLICY, String.class);
+
+        PLMHttpConfig config = new PLMHttpConfig(username, password, model, signal_name, lowest_date, highest_date);
+        config.setBaseUrl(base_url);
+        config.setRepository(repository);
+        config.setGroup(group);
+        config.setFetchWidth(fetch_width);
+        config.setWindowMillis(TimeUnit.MINUTES.toMillis(Math.max(1, window)));
+        config.setPollDelay(poll_delay);
+        config.setBatchSize(batch_size);
+        config.setBatchLinger(batch_linger);
+        config.setAggregationMillis(TimeUnit.SECONDS.toMillis(aggregation));
+        config.setAggregationFunctions(aggregation_functions);
+        config.setMode(PLMHttpConfig.Mode.valueOf(mode.trim().toUpperCase()));
+        if (!login && config.getMode() != PLMHttpConfig.Mode.REPLAY) {
+            throw new ParseException("Mode " + mode + " fetches from TruePLM and needs username and password, only replay works without");
+        }
+        config.setReplaySpeed(replay_speed);
+        config.setTailMillis(tail_interval);
+        config.setQueueCapacity(queue_capacity);
+        config.setQueuePolicy(PLMEmitter.Policy.valueOf(queue_policy.trim().toUpperCase()));
+        return config;
     }
 
 }
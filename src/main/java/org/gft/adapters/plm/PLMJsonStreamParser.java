@@ -0,0 +1,125 @@
+package org.gft.adapters.plm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.exception.ParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental parser for aggr_exp_dt?format=json responses.
+ * The stream is tokenized and every sample object of the first array is handed to the
+ * pipeline as soon as it is decoded, so heap use does not depend on the window size.
+ * The event map is reused between samples; the adapter pipeline processes events
+ * synchronously, so nothing holds on to it once process() returns.
+ */
+public class PLMJsonStreamParser {
+
+    private final JsonFactory factory = new JsonFactory();
+    private final Map<String, Object> event = new HashMap<>();
+
+    /**
+     * @return the number of samples emitted
+     */
+    public int parse(InputStream data, IAdapterPipeline adapterPipeline) throws ParseException {
+        return parse(data, null, adapterPipeline);
+    }
+
+    /**
+     * Same as {@link #parse(InputStream, IAdapterPipeline)}, tagging every sample with the
+     * name and URN of the signal it belongs to.
+     */
+    public int parse(InputStream data, PLMSignal signal, IAdapterPipeline adapterPipeline) throws ParseException {
+        int events = 0;
+        try (JsonParser json = factory.createParser(data)) {
+            JsonToken token = json.nextToken();
+            while (token != null && token != JsonToken.START_ARRAY) {
+                token = json.nextToken();
+            }
+            while (token != null && json.nextToken() == JsonToken.START_OBJECT) {
+                readSample(json);
+                if (signal != null) {
+                    event.put(PLMSignal.SIGNAL_KEY, signal.getName());
+                    event.put(PLMSignal.URN_KEY, signal.getPlainUrn());
+                }
+                adapterPipeline.process(event);
+                events++;
+            }
+        } catch (IOException e) {
+            throw new ParseException("Error while parsing aggr_exp_dt response: " + e.getMessage(), e);
+        }
+        return events;
+    }
+
+    /**
+     * Decodes the samples into a columnar buffer instead of emitting them.
+     *
+     * @return the number of samples read
+     */
+    public int read(InputStream data, PLMSampleBuffer buffer) throws ParseException {
+        int events = 0;
+        try (JsonParser json = factory.createParser(data)) {
+            JsonToken token = json.nextToken();
+            while (token != null && token != JsonToken.START_ARRAY) {
+                token = json.nextToken();
+            }
+            while (token != null && json.nextToken() == JsonToken.START_OBJECT) {
+                buffer.addRow();
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = json.getCurrentName();
+                    switch (json.nextToken()) {
+                        case VALUE_NUMBER_INT:
+                            buffer.putLong(name, json.getLongValue());
+                            break;
+                        case VALUE_NUMBER_FLOAT:
+                            buffer.putDouble(name, json.getDoubleValue());
+                            break;
+                        case VALUE_STRING:
+                            buffer.putObject(name, json.getText());
+                            break;
+                        case VALUE_TRUE:
+                        case VALUE_FALSE:
+                            buffer.putObject(name, json.getBooleanValue());
+                            break;
+                        default:
+                            json.skipChildren();
+                    }
+                }
+                events++;
+            }
+        } catch (IOException e) {
+            throw new ParseException("Error while parsing aggr_exp_dt response: " + e.getMessage(), e);
+        }
+        return events;
+    }
+
+    private void readSample(JsonParser json) throws IOException {
+        event.clear();
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String name = json.getCurrentName();
+            switch (json.nextToken()) {
+                case VALUE_NUMBER_INT:
+                    event.put(name, json.getLongValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    event.put(name, json.getDoubleValue());
+                    break;
+                case VALUE_STRING:
+                    event.put(name, json.getText());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    event.put(name, json.getBooleanValue());
+                    break;
+                default:
+                    // nested structures and nulls are not part of a sample
+                    json.skipChildren();
+            }
+        }
+    }
+}
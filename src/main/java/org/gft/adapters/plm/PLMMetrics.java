@@ -0,0 +1,288 @@
+package org.gft.adapters.plm;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of all adapter instances of the JVM, served in the Prometheus text format on
+ * PLM_METRICS_PORT (8091 by default, next to the service port 8090) under /metrics.
+ */
+public class PLMMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMMetrics.class);
+    private static final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private static HttpServer server;
+    private static final AtomicInteger instances = new AtomicInteger();
+    private static final Map<PLMHttpClient.Endpoint, Http> endpoints = new ConcurrentHashMap<>();
+
+    public static PrometheusMeterRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Starts the scrape endpoint once, a port of 0 or below disables it.
+     */
+    public static synchronized void serve(int port) {
+        if (server != null || port <= 0) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            logger.info("Serving metrics on port " + port + " under /metrics");
+        } catch (IOException e) {
+            logger.error("Could not serve metrics on port " + port + ": " + e.getMessage());
+            server = null;
+        }
+    }
+
+    static Http http(PLMHttpClient.Endpoint endpoint) {
+        return endpoints.computeIfAbsent(endpoint, Http::new);
+    }
+
+    /**
+     * State of the circuit to a server: 0 closed, 1 half open, 2 open.
+     */
+    static void breaker(PLMCircuitBreaker breaker) {
+        Gauge.builder("plm.circuit.state", breaker, b -> b.getState().ordinal())
+                .tag("server", breaker.getServer())
+                .register(registry);
+    }
+
+    static void breakerOpened(PLMCircuitBreaker breaker) {
+        Counter.builder("plm.circuit.opened").tag("server", breaker.getServer()).register(registry).increment();
+    }
+
+    static void tokenRefreshed() {
+        Counter.builder("plm.token.refreshes").register(registry).increment();
+    }
+
+    /**
+     * @return a tag value of its own for the gauges of one adapter instance, so adapters of the
+     * same model neither collide nor remove each other's gauges
+     */
+    static String instance() {
+        return String.valueOf(instances.incrementAndGet());
+    }
+
+    /**
+     * Wall clock minus cursor of an adapter, i.e. how far it is behind the present.
+     */
+    static Meter lag(PLMHttpConfig config, String adapter) {
+        return Gauge.builder("plm.ingestion.lag", config, c -> Math.max(0, System.currentTimeMillis() - c.getCursor()) / 1000.0)
+                .tag("model", config.getModel())
+                .tag("adapter", adapter)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * 1 once an adapter loaded its catalogue and resolved its signals, 0 while it sets up.
+     */
+    static Meter ready(PLMHttpConfig config, String adapter, PLMHttpStreamProtocol protocol) {
+        return Gauge.builder("plm.adapter.ready", protocol, p -> p.isReady() ? 1 : 0)
+                .tag("model", config.getModel())
+                .tag("adapter", adapter)
+                .register(registry);
+    }
+
+    /**
+     * Windows fetched but not emitted yet, per adapter.
+     */
+    static Meter queue(PLMHttpConfig config, String adapter, PLMEmitter<?> emitter) {
+        return Gauge.builder("plm.queue.depth", emitter, PLMEmitter::size)
+                .tag("model", config.getModel())
+                .tag("adapter", adapter)
+                .register(registry);
+    }
+
+    static void remove(Meter meter) {
+        if (meter != null) {
+            registry.remove(meter);
+        }
+    }
+
+    /**
+     * Meters of the requests to one kind of endpoint, registered once and shared by all adapters.
+     */
+    static class Http {
+
+        private final String endpoint;
+        // by status code, there are only a few of them
+        private final Map<String, Timer> requests = new ConcurrentHashMap<>();
+        private final Timer connect;
+        private final Timer headers;
+        private final Timer body;
+        private final Counter retries;
+
+        private Http(PLMHttpClient.Endpoint endpoint) {
+            this.endpoint = endpoint.name().toLowerCase();
+            this.connect = phase("connect");
+            this.headers = phase("headers");
+            this.body = phase("body");
+            this.retries = Counter.builder("plm.http.retries").tag("endpoint", this.endpoint).register(registry);
+        }
+
+        /**
+         * Time spent in one phase of a request: connect (from the pool, connecting if needed),
+         * headers (sent until the response headers arrived) or body (read until its end or closed,
+         * windows are decoded while their body streams in).
+         */
+        private Timer phase(String phase) {
+            return Timer.builder("plm.http.phase").tag("endpoint", this.endpoint).tag("phase", phase)
+                    .publishPercentileHistogram().register(registry);
+        }
+
+        /**
+         * Time until the response headers arrived, per status code.
+         */
+        void request(String status, long nanos) {
+            this.requests.computeIfAbsent(status, s -> Timer.builder("plm.http.requests")
+                    .tag("endpoint", this.endpoint)
+                    .tag("status", s)
+                    .publishPercentileHistogram()
+                    .register(registry))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void connected(long nanos) {
+            this.connect.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void headers(long nanos) {
+            this.headers.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void body(long nanos) {
+            this.body.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void retried() {
+            this.retries.increment();
+        }
+    }
+
+    /**
+     * Meters of the parse and SendToPipeline step of one model.
+     */
+    static class Window {
+
+        private final Timer emit;
+        private final DistributionSummary bytes;
+        private final DistributionSummary events;
+        private final Counter emitted;
+        private final Counter failures;
+        private final Counter duplicates;
+        private final Counter stragglers;
+        private final Counter overflows;
+
+        Window(PLMHttpConfig config) {
+            String model = config.getModel();
+            this.emit = Timer.builder("plm.window.emit").tag("model", model).publishPercentileHistogram().register(registry);
+            this.bytes = DistributionSummary.builder("plm.window.bytes").tag("model", model).baseUnit("bytes")
+                    .publishPercentileHistogram().register(registry);
+            this.events = DistributionSummary.builder("plm.window.events").tag("model", model)
+                    .publishPercentileHistogram().register(registry);
+            this.emitted = Counter.builder("plm.events.emitted").tag("model", model).register(registry);
+            this.failures = Counter.builder("plm.window.failures").tag("model", model).register(registry);
+            this.duplicates = Counter.builder("plm.samples.dropped").tag("model", model).tag("reason", "duplicate").register(registry);
+            this.stragglers = Counter.builder("plm.samples.dropped").tag("model", model).tag("reason", "straggler").register(registry);
+            this.overflows = Counter.builder("plm.queue.dropped").tag("model", model).register(registry);
+        }
+
+        /**
+         * Runs one emission and records its duration, size and event count.
+         */
+        int record(InputStream data, Emission emission) {
+            Counting counting = new Counting(data);
+            long start = System.nanoTime();
+            int count = emission.emit(counting);
+            bytes(counting.count);
+            emitted(count, System.nanoTime() - start);
+            return count;
+        }
+
+        void bytes(long bytes) {
+            this.bytes.record(bytes);
+        }
+
+        void emitted(int events, long nanos) {
+            this.emit.record(nanos, TimeUnit.NANOSECONDS);
+            this.events.record(events);
+            this.emitted.increment(events);
+        }
+
+        void failed() {
+            this.failures.increment();
+        }
+
+        void dropped(String reason) {
+            (reason.equals("duplicate") ? this.duplicates : this.stragglers).increment();
+        }
+
+        /**
+         * A fetched window dropped because the emission queue was full.
+         */
+        void overflowed() {
+            this.overflows.increment();
+        }
+    }
+
+    interface Emission {
+        int emit(InputStream data);
+    }
+
+    private static class Counting extends FilterInputStream {
+
+        private long count;
+
+        private Counting(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last stage of a replay, holds events back until they are due: the first event fixes the
+ * origin, an event recorded t ms later is handed on t / speed ms after it. Events late for their
+ * turn, e.g. the next signal of the same window, pass right away. Batches are due with their
+ * first sample. Once the replay thread is interrupted the remaining events are dropped.
+ */
+public class PLMPacer implements IAdapterPipeline {
+
+    private final IAdapterPipeline pipeline;
+    private final int speed;
+    private long origin = Long.MIN_VALUE;
+    private long started;
+
+    public PLMPacer(IAdapterPipeline pipeline, int speed) {
+        this.pipeline = pipeline;
+        this.speed = speed;
+    }
+
+    @Override
+    public void process(Map<String, Object> event) {
+        Object timestamp = timestamp(event.get(PLMAggregator.TIMESTAMP_KEY));
+        if (this.speed > 0 && timestamp instanceof Number) {
+            long recorded = ((Number) timestamp).longValue();
+            if (this.origin == Long.MIN_VALUE) {
+                this.origin = recorded;
+                this.started = System.currentTimeMillis();
+            }
+            long wait = this.started + (recorded - this.origin) / this.speed - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            this.pipeline.process(event);
+        }
+    }
+
+    private static Object timestamp(Object value) {
+        if (value instanceof List) {
+            return ((List<?>) value).isEmpty() ? null : ((List<?>) value).get(0);
+        }
+        if (value instanceof long[]) {
+            return ((long[]) value).length == 0 ? null : ((long[]) value)[0];
+        }
+        return value;
+    }
+
+    @Override
+    public List<IAdapterPipelineElement> getPipelineElements() {
+        return this.pipeline.getPipelineElements();
+    }
+
+    @Override
+    public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+        this.pipeline.setPipelineElements(pipelineElements);
+    }
+
+    @Override
+    public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+        this.pipeline.changePipelineSink(pipelineSink);
+    }
+
+    @Override
+    public IAdapterPipelineElement getPipelineSink() {
+        return this.pipeline.getPipelineSink();
+    }
+}
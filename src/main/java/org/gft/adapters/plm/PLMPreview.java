@@ -0,0 +1,84 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.model.schema.EventSchema;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What the adapter setup dialog shows of a signal: the first bytes of its next window and the
+ * schema guessed from them. Previews are kept per server, model and signal for a while, so
+ * reopening the dialog sends no request at all. If the preview holds the whole body of a closed
+ * window, the first poll of an adapter of that signal takes it instead of fetching the window again.
+ */
+public class PLMPreview {
+
+    static final int MAX_BYTES = 1 << 20;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(15);
+
+    private static final Map<String, PLMPreview> previews = new ConcurrentHashMap<>();
+
+    private final PLMTimeWindow window;
+    private final byte[] data;
+    // the whole body of a window that was closed when fetched, so it can stand in for the window
+    private final boolean complete;
+    private final long fetched = System.currentTimeMillis();
+    private final AtomicBoolean taken = new AtomicBoolean();
+    private volatile EventSchema schema;
+
+    PLMPreview(PLMTimeWindow window, byte[] data, boolean complete) {
+        this.window = window;
+        this.data = data;
+        this.complete = complete;
+    }
+
+    public PLMTimeWindow getWindow() {  return this.window;}
+    public InputStream open() {  return new ByteArrayInputStream(this.data);}
+
+    /**
+     * @return the schema of the samples guessed before, null if none was guessed yet
+     */
+    public EventSchema getSchema() {
+        return this.schema == null ? null : new EventSchema(this.schema);
+    }
+
+    public void setSchema(EventSchema schema) {
+        this.schema = new EventSchema(schema);
+    }
+
+    /**
+     * @return the preview of a signal, null if there is none or it is outdated
+     */
+    public static PLMPreview get(PLMHttpConfig config, PLMSignal signal) {
+        PLMPreview preview = previews.get(key(config, signal));
+        if (preview != null && System.currentTimeMillis() - preview.fetched > TTL) {
+            previews.remove(key(config, signal), preview);
+            return null;
+        }
+        return preview;
+    }
+
+    public static void put(PLMHttpConfig config, PLMSignal signal, PLMPreview preview) {
+        previews.put(key(config, signal), preview);
+    }
+
+    /**
+     * @return the body of the window if a preview fetched all of it, only to the first caller
+     */
+    public static byte[] take(PLMHttpConfig config, PLMSignal signal, PLMTimeWindow window) {
+        PLMPreview preview = get(config, signal);
+        if (preview == null || !preview.complete || !preview.window.equals(window) || !preview.taken.compareAndSet(false, true)) {
+            return null;
+        }
+        return preview.data;
+    }
+
+    private static String key(PLMHttpConfig config, PLMSignal signal) {
+        return config.getBaseUrl() + "|" + config.getRepository() + "|" + config.getModel() + "|"
+                + signal.getId() + "|" + signal.getUrn();
+    }
+}
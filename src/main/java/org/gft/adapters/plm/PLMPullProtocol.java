@@ -1,6 +1,5 @@
 package org.gft.adapters.plm;
 
-import org.apache.streampipes.connect.SendToPipeline;
 import org.apache.streampipes.connect.adapter.model.generic.Protocol;
 import org.apache.streampipes.connect.api.IAdapterPipeline;
 import org.apache.streampipes.connect.api.IFormat;
@@ -9,17 +8,34 @@ import org.apache.streampipes.connect.api.exception.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Polls one window after the other on the threads of {@link PLMScheduler}: the next poll is only
+ * scheduled once the previous one returned, so polls of one adapter never overlap. Polling ends
+ * when the adapter stops or there is nothing left to fetch.
+ */
 public abstract class PLMPullProtocol extends Protocol {
 
-    private ScheduledExecutorService scheduler;
+    /**
+     * Result of {@link #emitWindow} once there is nothing left to fetch, polling stops.
+     */
+    static final int EXHAUSTED = -2;
+
+    private static final long STOP = -1;
 
     private final Logger logger = LoggerFactory.getLogger(PLMPullProtocol.class);
 
     private long interval;
 
+    private boolean running;
+
+    private PLMScheduler.Handle next;
+
+    final PLMJsonStreamParser sampleParser = new PLMJsonStreamParser();
+
+    final PLMHttpClient.Requests requests = new PLMHttpClient.Requests();
+
 
     public PLMPullProtocol() {
     }
@@ -30,49 +46,91 @@ public abstract class PLMPullProtocol extends Protocol {
     }
 
     @Override
-    public void run(IAdapterPipeline adapterPipeline) {
-        final Runnable errorThread = () -> executeProtocolLogic(adapterPipeline);
-
-        scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.schedule(errorThread, 0, TimeUnit.MILLISECONDS);
-
+    public synchronized void run(IAdapterPipeline adapterPipeline) {
+        running = true;
+        schedule(() -> executeProtocolLogic(adapterPipeline), 0);
     }
 
 
     private void executeProtocolLogic(IAdapterPipeline adapterPipeline) {
-        final Runnable task = () -> {
-
-            format.reset();
-            SendToPipeline stk = new SendToPipeline(format, adapterPipeline);
-            try {
-                InputStream data = getDataFromEndpoint();
-                if(data != null) {
-                    parser.parse(data, stk);
-                } else {
-                    logger.warn("Could not receive data from Endpoint. Try again in " + interval + " seconds.");
-                }
-            } catch (ParseException e) {
-                logger.error("Error while parsing: " + e.getMessage());
-            } catch (java.text.ParseException e) {
-                throw new RuntimeException(e);
-            }
+        try {
+            backfill(adapterPipeline);
+        } catch (InterruptedException e) {
+            return;
+        } catch (ParseException e) {
+            logger.error("Error while backfilling, continuing with live polling: " + e.getMessage());
+        }
 
+        schedule(() -> poll(adapterPipeline), 1000);
+    }
+
+    private void poll(IAdapterPipeline adapterPipeline) {
+        long delay = TimeUnit.SECONDS.toMillis(interval);
+        try {
+            delay = fetchWindow(adapterPipeline);
+        } finally {
+            // whatever went wrong, keep polling until the data is exhausted
+            if (delay != STOP) {
+                schedule(() -> poll(adapterPipeline), delay);
+            }
+        }
+    }
 
-        };
+    private synchronized void schedule(Runnable task, long delay) {
+        if (running) {
+            next = PLMScheduler.schedule(task, delay);
+        } else {
+            logger.debug("Adapter stopped, no further polls scheduled.");
+        }
+    }
 
-        scheduler = Executors.newScheduledThreadPool(1);
-        ScheduledFuture<?> handle = scheduler.scheduleAtFixedRate(task, 1, interval, TimeUnit.SECONDS);
+    private long fetchWindow(IAdapterPipeline adapterPipeline) {
         try {
-            handle.get();
-        } catch (ExecutionException | InterruptedException e ) {
-            logger.error("Error", e);
+            int events = emitWindow(adapterPipeline);
+            if(events >= 0) {
+                return nextDelay(events);
+            } else if (events == EXHAUSTED) {
+                logger.info("Nothing left to fetch, polling stopped.");
+                return STOP;
+            } else if (!Thread.currentThread().isInterrupted()) {
+                logger.warn("Could not receive data from Endpoint. Try again in " + interval + " seconds.");
+            }
+        } catch (ParseException e) {
+            logger.error("Error while parsing: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while polling", e);
         }
+        return TimeUnit.SECONDS.toMillis(interval);
     }
 
+    /**
+     * Cancels the pending or running poll and aborts its requests.
+     */
     @Override
-    public void stop() {
-        scheduler.shutdownNow();
+    public synchronized void stop() {
+        running = false;
+        if (next != null) {
+            next.cancel();
+        }
+        requests.cancel();
     }
 
-    abstract InputStream getDataFromEndpoint() throws ParseException, java.text.ParseException;
+    /**
+     * Fetches the next window and hands its events to the pipeline.
+     *
+     * @return the number of events emitted, -1 if nothing could be fetched this time, or
+     * {@link #EXHAUSTED} if no later poll can fetch anything
+     */
+    abstract int emitWindow(IAdapterPipeline adapterPipeline) throws ParseException;
+
+    /**
+     * Catches up with the present before live polling starts.
+     */
+    abstract void backfill(IAdapterPipeline adapterPipeline) throws InterruptedException;
+
+    /**
+     * @param events number of events the last window delivered
+     * @return milliseconds to wait before fetching the next window
+     */
+    abstract long nextDelay(int events);
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package org.gft.adapters.plm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue without locks for any number of producers and consumers. Every slot carries a
+ * sequence number that tells whose turn it is: a producer may fill slot i when its sequence equals
+ * the tail position, a consumer may empty it once the sequence is one ahead of the head position.
+ * Positions only grow, so a slot freed and refilled in between is never mistaken for the old one.
+ */
+public class PLMRingBuffer<T> {
+
+    private final int capacity;
+    // a slot one round ahead must not look free, so there are two slots at least
+    private final int slots;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public PLMRingBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = Math.max(2, this.capacity);
+        this.items = new AtomicReferenceArray<>(this.slots);
+        this.sequences = new AtomicLongArray(this.slots);
+        for (int i = 0; i < this.slots; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    public boolean offer(T item) {
+        while (true) {
+            long position = this.tail.get();
+            int slot = (int) (position % this.slots);
+            long difference = this.sequences.get(slot) - position;
+            if (difference == 0) {
+                // only a capacity of one has a spare slot, a stale head errs on the full side
+                if (this.capacity < this.slots && position - this.head.get() >= this.capacity) {
+                    return false;
+                }
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.items.set(slot, item);
+                    // publishes the item to the consumers
+                    this.sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // the slot still holds the item of the previous round
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the oldest item, null if the buffer is empty
+     */
+    public T poll() {
+        while (true) {
+            long position = this.head.get();
+            int slot = (int) (position % this.slots);
+            long difference = this.sequences.get(slot) - (position + 1);
+            if (difference == 0) {
+                if (this.head.compareAndSet(position, position + 1)) {
+                    T item = this.items.getAndSet(slot, null);
+                    // hands the slot to the producers of the next round
+                    this.sequences.set(slot, position + this.slots);
+                    return item;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of items queued, exact only while nobody offers or polls
+     */
+    public int size() {
+        long size = this.tail.get() - this.head.get();
+        return (int) Math.max(0, Math.min(this.capacity, size));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
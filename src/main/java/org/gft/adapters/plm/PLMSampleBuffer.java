@@ -0,0 +1,457 @@
+package org.gft.adapters.plm;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The samples of one window of one signal, stored column by column: integer fields in a long
+ * column, decimal fields in a double column (an integer column turns into a double one at the
+ * first decimal value) and anything else in an object column. Numeric columns live on the heap
+ * or, with PLM_OFF_HEAP_BUFFERS, in direct memory. Samples are read back through one reusable
+ * {@link Row} view, so emitting a window allocates no map per sample. Not thread-safe, a buffer
+ * is filled by one thread and emitted by one thread afterwards.
+ */
+public class PLMSampleBuffer {
+
+    private static final int INITIAL_ROWS = 1024;
+
+    private final boolean off_heap;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final List<Column> order = new ArrayList<>();
+    private final Row row = new Row();
+    private int rows;
+
+    public PLMSampleBuffer(boolean off_heap) {
+        this.off_heap = off_heap;
+    }
+
+    public int size() {
+        return this.rows;
+    }
+
+    /**
+     * Forgets all samples, the columns keep their capacity.
+     */
+    public void clear() {
+        for (Column column : this.order) {
+            column.clear();
+        }
+        this.rows = 0;
+    }
+
+    /**
+     * Starts the next sample, the put methods fill its fields.
+     */
+    void addRow() {
+        this.rows++;
+    }
+
+    void putLong(String field, long value) {
+        column(field).putLong(this.rows - 1, value);
+    }
+
+    void putDouble(String field, double value) {
+        column(field).putDouble(this.rows - 1, value);
+    }
+
+    void putObject(String field, Object value) {
+        column(field).putObject(this.rows - 1, value);
+    }
+
+    private Column column(String field) {
+        Column column = this.columns.get(field);
+        if (column == null) {
+            column = new Column(field);
+            this.columns.put(field, column);
+            this.order.add(column);
+        }
+        return column;
+    }
+
+    List<Column> columns() {
+        return this.order;
+    }
+
+    /**
+     * @return the column of a field, null if no sample has the field
+     */
+    Column getColumn(String field) {
+        return this.columns.get(field);
+    }
+
+    /**
+     * Removes the given rows, the rows after them move up.
+     */
+    void remove(BitSet rows) {
+        for (Column column : this.order) {
+            column.remove(rows, this.rows);
+        }
+        this.rows -= rows.get(0, this.rows).cardinality();
+    }
+
+    /**
+     * @return the view on a sample, the same instance for every call, tagged with signal and urn
+     * if a signal is given
+     */
+    public Map<String, Object> row(int index, PLMSignal signal) {
+        this.row.index = index;
+        this.row.signal = signal;
+        this.row.written = null;
+        return this.row;
+    }
+
+    enum Type {
+        EMPTY, LONG, DOUBLE, OBJECT
+    }
+
+    class Column {
+
+        private final String name;
+        private Type type = Type.EMPTY;
+        private LongBuffer longs;
+        private DoubleBuffer doubles;
+        private Object[] objects;
+        // rows this column has no value for, only allocated once a sample lacks the field
+        private BitSet absent;
+        private int filled;
+
+        private Column(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        Type getType() {
+            return this.type;
+        }
+
+        private void clear() {
+            if (this.type == Type.OBJECT) {
+                Arrays.fill(this.objects, 0, this.filled, null);
+            }
+            this.type = Type.EMPTY;
+            this.filled = 0;
+            if (this.absent != null) {
+                this.absent.clear();
+            }
+        }
+
+        boolean has(int row) {
+            return row < this.filled && (this.absent == null || !this.absent.get(row));
+        }
+
+        long getLong(int row) {
+            return this.longs.get(row);
+        }
+
+        double getDouble(int row) {
+            return this.doubles.get(row);
+        }
+
+        Object get(int row) {
+            switch (this.type) {
+                case LONG:
+                    return this.longs.get(row);
+                case DOUBLE:
+                    return this.doubles.get(row);
+                case OBJECT:
+                    return this.objects[row];
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return the values of rows [from, to) as long[], double[] or Object[], absent values as 0 or null
+         */
+        Object slice(int from, int to) {
+            switch (this.type) {
+                case LONG:
+                    long[] longs = new long[to - from];
+                    for (int i = from; i < to; i++) {
+                        longs[i - from] = has(i) ? this.longs.get(i) : 0;
+                    }
+                    return longs;
+                case DOUBLE:
+                    double[] doubles = new double[to - from];
+                    for (int i = from; i < to; i++) {
+                        doubles[i - from] = has(i) ? this.doubles.get(i) : 0;
+                    }
+                    return doubles;
+                default:
+                    Object[] objects = new Object[to - from];
+                    for (int i = from; i < to; i++) {
+                        objects[i - from] = has(i) ? get(i) : null;
+                    }
+                    return objects;
+            }
+        }
+
+        private void remove(BitSet rows, int count) {
+            int kept = 0;
+            int filled = 0;
+            BitSet absent = null;
+            for (int i = 0; i < count; i++) {
+                if (rows.get(i)) {
+                    continue;
+                }
+                if (has(i)) {
+                    // kept never passes i, so the values move up in place
+                    switch (this.type) {
+                        case LONG:
+                            this.longs.put(kept, this.longs.get(i));
+                            break;
+                        case DOUBLE:
+                            this.doubles.put(kept, this.doubles.get(i));
+                            break;
+                        case OBJECT:
+                            this.objects[kept] = this.objects[i];
+                            break;
+                        default:
+                            break;
+                    }
+                    if (kept > filled) {
+                        absent = absent == null ? new BitSet() : absent;
+                        absent.set(filled, kept);
+                    }
+                    filled = kept + 1;
+                }
+                kept++;
+            }
+            if (this.type == Type.OBJECT) {
+                Arrays.fill(this.objects, filled, this.filled, null);
+            }
+            this.filled = filled;
+            this.absent = absent;
+        }
+
+        private void putLong(int row, long value) {
+            if (this.type == Type.EMPTY || this.type == Type.LONG) {
+                this.type = Type.LONG;
+                this.longs = ensure(this.longs, row);
+                fill(row);
+                this.longs.put(row, value);
+            } else if (this.type == Type.DOUBLE) {
+                putDouble(row, value);
+            } else {
+                putObject(row, value);
+            }
+        }
+
+        private void putDouble(int row, double value) {
+            if (this.type == Type.LONG) {
+                // an integer column turns decimal at its first decimal value
+                DoubleBuffer doubles = ensure(this.doubles, Math.max(row, this.longs.capacity() - 1));
+                for (int i = 0; i < this.filled; i++) {
+                    doubles.put(i, this.longs.get(i));
+                }
+                this.doubles = doubles;
+                this.type = Type.DOUBLE;
+            }
+            if (this.type == Type.EMPTY || this.type == Type.DOUBLE) {
+                this.type = Type.DOUBLE;
+                this.doubles = ensure(this.doubles, row);
+                fill(row);
+                this.doubles.put(row, value);
+            } else {
+                putObject(row, value);
+            }
+        }
+
+        private void putObject(int row, Object value) {
+            if (this.type == Type.LONG || this.type == Type.DOUBLE) {
+                Object[] objects = new Object[Math.max(INITIAL_ROWS, row + 1)];
+                for (int i = 0; i < this.filled; i++) {
+                    objects[i] = get(i);
+                }
+                this.objects = objects;
+            } else if (this.objects == null || this.objects.length <= row) {
+                this.objects = this.objects == null ? new Object[Math.max(INITIAL_ROWS, row + 1)]
+                        : Arrays.copyOf(this.objects, Math.max(this.objects.length * 2, row + 1));
+            }
+            this.type = Type.OBJECT;
+            fill(row);
+            this.objects[row] = value;
+        }
+
+        /**
+         * Marks the rows between the last value and this one as absent.
+         */
+        private void fill(int row) {
+            if (row > this.filled) {
+                if (this.absent == null) {
+                    this.absent = new BitSet();
+                }
+                this.absent.set(this.filled, row);
+            }
+            this.filled = row + 1;
+        }
+
+        private LongBuffer ensure(LongBuffer buffer, int row) {
+            if (buffer != null && buffer.capacity() > row) {
+                return buffer;
+            }
+            LongBuffer grown = allocate(capacity(buffer == null ? 0 : buffer.capacity(), row)).asLongBuffer();
+            for (int i = 0; i < this.filled && buffer != null; i++) {
+                grown.put(i, buffer.get(i));
+            }
+            return grown;
+        }
+
+        private DoubleBuffer ensure(DoubleBuffer buffer, int row) {
+            if (buffer != null && buffer.capacity() > row) {
+                return buffer;
+            }
+            DoubleBuffer grown = allocate(capacity(buffer == null ? 0 : buffer.capacity(), row)).asDoubleBuffer();
+            for (int i = 0; i < this.filled && buffer != null; i++) {
+                grown.put(i, buffer.get(i));
+            }
+            return grown;
+        }
+
+        private int capacity(int current, int row) {
+            return Math.max(Math.max(INITIAL_ROWS, current * 2), row + 1);
+        }
+
+        private ByteBuffer allocate(int values) {
+            return off_heap ? ByteBuffer.allocateDirect(values * 8) : ByteBuffer.allocate(values * 8);
+        }
+    }
+
+    /**
+     * Flyweight map over one sample. Values are boxed when read; the first write copies the
+     * sample into a private map, so pipeline elements that rename or add fields still work.
+     */
+    private class Row extends AbstractMap<String, Object> {
+
+        private int index;
+        private PLMSignal signal;
+        private Map<String, Object> written;
+
+        @Override
+        public Object get(Object key) {
+            if (this.written != null) {
+                return this.written.get(key);
+            }
+            if (this.signal != null) {
+                if (PLMSignal.SIGNAL_KEY.equals(key)) {
+                    return this.signal.getName();
+                }
+                if (PLMSignal.URN_KEY.equals(key)) {
+                    return this.signal.getPlainUrn();
+                }
+            }
+            Column column = columns.get(key);
+            return column != null && column.has(this.index) ? column.get(this.index) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (this.written != null) {
+                return this.written.containsKey(key);
+            }
+            if (this.signal != null && (PLMSignal.SIGNAL_KEY.equals(key) || PLMSignal.URN_KEY.equals(key))) {
+                return true;
+            }
+            Column column = columns.get(key);
+            return column != null && column.has(this.index);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return written().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return written().remove(key);
+        }
+
+        @Override
+        public void clear() {
+            written().clear();
+        }
+
+        private Map<String, Object> written() {
+            if (this.written == null) {
+                Map<String, Object> copy = new HashMap<>();
+                for (Map.Entry<String, Object> field : entrySet()) {
+                    copy.put(field.getKey(), field.getValue());
+                }
+                this.written = copy;
+            }
+            return this.written;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            if (this.written != null) {
+                return this.written.entrySet();
+            }
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Fields();
+                }
+
+                @Override
+                public int size() {
+                    int size = signal == null ? 0 : 2;
+                    for (Column column : order) {
+                        if (column.has(index)) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+
+        /**
+         * Walks signal and urn first, then the columns that have a value in this row.
+         */
+        private class Fields implements Iterator<Map.Entry<String, Object>> {
+
+            private int position = signal == null ? 2 : 0;
+
+            @Override
+            public boolean hasNext() {
+                while (position >= 2 && position - 2 < order.size() && !order.get(position - 2).has(index)) {
+                    position++;
+                }
+                return position - 2 < order.size();
+            }
+
+            @Override
+            public Map.Entry<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int current = position++;
+                if (current == 0) {
+                    return new SimpleImmutableEntry<>(PLMSignal.SIGNAL_KEY, signal.getName());
+                }
+                if (current == 1) {
+                    return new SimpleImmutableEntry<>(PLMSignal.URN_KEY, signal.getPlainUrn());
+                }
+                Column column = order.get(current - 2);
+                return new SimpleImmutableEntry<>(column.getName(), column.get(index));
+            }
+        }
+    }
+}
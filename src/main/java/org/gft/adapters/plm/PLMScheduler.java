@@ -0,0 +1,226 @@
+package org.gft.adapters.plm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by all adapters of the JVM. A single timer thread only hands due polls over to
+ * the poll pool, the blocking requests a poll fans out to run on the fetch pool. Both pools are
+ * bounded and let idle threads die, so an adapter that waits for its next poll costs a timer
+ * entry and no thread. Polls never run on the fetch pool, so a poll waiting for its requests
+ * cannot starve them. Every adapter queues its requests in a {@link Lane} of its own and the
+ * fetch threads serve the lanes in turn. Every request sent, retries and logins included, waits
+ * for its turn in the global budget of PLM_FETCH_RATE requests per second. Fetched windows reach
+ * the pipelines through drain tasks on a third bounded pool, one task per {@link PLMEmitter} at most.
+ */
+public class PLMScheduler {
+
+    private static final int POLL_THREADS = 64;
+    private static final int EMIT_THREADS = 16;
+    private static final long KEEP_ALIVE = 60;
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemon("plm-timer"));
+    private static final ExecutorService polls = bounded(POLL_THREADS, "plm-poll");
+    private static final ExecutorService fetches = bounded(PLMHttpUtils.getFetchThreads(), "plm-fetch");
+    private static final ExecutorService emits = bounded(EMIT_THREADS, "plm-emit");
+    // lanes with queued requests, the lane served next first
+    private static final Deque<Lane> ready = new ArrayDeque<>();
+    private static final double rate = PLMHttpUtils.getFetchRate();
+    private static long next_permit;
+    // true on fetch threads while they run a lane task
+    private static final ThreadLocal<Boolean> fetching = ThreadLocal.withInitial(() -> false);
+
+    static {
+        // cancelled polls leave the timer queue right away instead of when they would have been due
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * A poll that is either waiting for its turn or running.
+     */
+    public static class Handle {
+
+        private final Runnable task;
+        private boolean cancelled;
+        private Future<?> phase;
+
+        private Handle(Runnable task) {
+            this.task = task;
+        }
+
+        private synchronized void start() {
+            if (!this.cancelled) {
+                this.phase = polls.submit(this.task);
+            }
+        }
+
+        /**
+         * Drops the poll if it is not due yet, interrupts it otherwise.
+         */
+        public synchronized void cancel() {
+            this.cancelled = true;
+            if (this.phase != null) {
+                this.phase.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Request queue of one adapter on the shared fetch threads. Queued requests cost no thread,
+     * and an adapter with hundreds of queued windows delays the others by one request at most.
+     */
+    public static class Lane {
+
+        private final String name;
+        private final Queue<FutureTask<?>> tasks = new ArrayDeque<>();
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public <T> Future<T> submit(Callable<T> task) {
+            FutureTask<T> future = new FutureTask<>(task);
+            synchronized (ready) {
+                if (this.tasks.isEmpty()) {
+                    ready.add(this);
+                }
+                this.tasks.add(future);
+            }
+            // one turn per request, a fetch thread runs whichever lane is due by then
+            fetches.execute(PLMScheduler::runNext);
+            return future;
+        }
+
+        /**
+         * Runs a request in this lane and waits for it. A caller that already runs on a fetch
+         * thread, e.g. a login while fetching a window, sends it right away instead of waiting
+         * for a turn behind its own lane.
+         */
+        public <T> T call(Callable<T> task) throws IOException {
+            try {
+                if (fetching.get()) {
+                    return task.call();
+                }
+                return submit(task).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request of " + this.name);
+            } catch (ExecutionException e) {
+                return rethrow(e.getCause());
+            } catch (Exception e) {
+                return rethrow(e);
+            }
+        }
+
+        private static <T> T rethrow(Throwable e) throws IOException {
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new IOException(e);
+        }
+    }
+
+    public static Lane lane(String name) {
+        return new Lane(name);
+    }
+
+    private static void runNext() {
+        FutureTask<?> task;
+        synchronized (ready) {
+            Lane lane = ready.poll();
+            if (lane == null) {
+                return;
+            }
+            task = lane.tasks.poll();
+            if (!lane.tasks.isEmpty()) {
+                ready.add(lane);
+            }
+        }
+        // cancelled tasks return right away
+        fetching.set(true);
+        try {
+            task.run();
+        } finally {
+            fetching.set(false);
+        }
+    }
+
+    /**
+     * Waits until the global request rate allows the next request.
+     */
+    static void throttle() {
+        if (rate <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (PLMScheduler.class) {
+            long now = System.nanoTime();
+            next_permit = Math.max(next_permit, now);
+            wait = next_permit - now;
+            next_permit += (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs a drain task of an emitter. Producers that wait for space never run here.
+     */
+    static void emit(Runnable task) {
+        emits.execute(task);
+    }
+
+    public static Handle schedule(Runnable task, long delay) {
+        Handle handle = new Handle(task);
+        synchronized (handle) {
+            // start() waits for this, so it cannot be overwritten by the timer future
+            handle.phase = timer.schedule(handle::start, delay, TimeUnit.MILLISECONDS);
+        }
+        return handle;
+    }
+
+    private static ExecutorService bounded(int threads, String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemon(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,246 @@
+package org.gft.adapters.plm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Recording of the windows fetched for a model, under recordings/&lt;model&gt; of the data directory.
+ * Windows are appended in fetch order to numbered segment files, each response deflated and
+ * preceded by its signal and bounds. Every segment has an index of fixed size entries
+ * (from, to, offset, length), written after the record, so a record torn by a crash is never indexed.
+ * Replays read the index, sort it by window start and read the records through memory mapped
+ * segments. Every run of a recorder starts a new segment.
+ */
+public class PLMSegmentLog {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int INDEX_ENTRY = 8 + 8 + 8 + 4;
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMSegmentLog.class);
+    private static final Map<Path, PLMSegmentLog> logs = new ConcurrentHashMap<>();
+
+    /**
+     * One recorded window of one signal.
+     */
+    public static class Entry {
+
+        private final MappedByteBuffer segment;
+        private final PLMSignal signal;
+        private final PLMTimeWindow window;
+        private final int data;
+        private final int length;
+
+        private Entry(MappedByteBuffer segment, PLMSignal signal, PLMTimeWindow window, int data, int length) {
+            this.segment = segment;
+            this.signal = signal;
+            this.window = window;
+            this.data = data;
+            this.length = length;
+        }
+
+        public PLMSignal getSignal() {  return this.signal;}
+        public PLMTimeWindow getWindow() {  return this.window;}
+
+        /**
+         * @return the response as the server sent it
+         */
+        public InputStream open() {
+            ByteBuffer slice = this.segment.duplicate();
+            slice.position(this.data);
+            slice.limit(this.data + this.length);
+            return new InflaterInputStream(new PLMWindowCache.MappedInputStream(slice.slice()), new Inflater(), 65536);
+        }
+    }
+
+    private final Path directory;
+    private OutputStream segment;
+    private OutputStream index;
+    private long size;
+
+    private PLMSegmentLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the recording of the configured model, one per server and repository
+     */
+    public static PLMSegmentLog of(PLMHttpConfig config) {
+        String key = config.getBaseUrl() + "|" + config.getRepository() + "|" + config.getModel();
+        String model = config.getModel().replaceAll("[^A-Za-z0-9_.-]", "_");
+        Path directory = PLMHttpUtils.getDataDirectory().resolve("recordings")
+                .resolve(model + "-" + Integer.toHexString(key.hashCode()));
+        return logs.computeIfAbsent(directory, PLMSegmentLog::new);
+    }
+
+    /**
+     * Appends a fetched window, failures are logged and do not disturb the adapter.
+     */
+    public synchronized void append(PLMSignal signal, PLMTimeWindow window, byte[] data) {
+        try {
+            if (this.segment == null || this.size >= SEGMENT_BYTES) {
+                roll();
+            }
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(data.length / 4 + 64);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.BEST_SPEED))) {
+                out.write(data);
+            }
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(header);
+            record.writeUTF(signal.getName());
+            record.writeUTF(signal.getId());
+            record.writeUTF(signal.getUrn());
+            record.writeInt(deflated.size());
+            long offset = this.size;
+            header.writeTo(this.segment);
+            deflated.writeTo(this.segment);
+            this.segment.flush();
+            int length = header.size() + deflated.size();
+            this.size += length;
+
+            DataOutputStream entry = new DataOutputStream(this.index);
+            entry.writeLong(window.getFrom());
+            entry.writeLong(window.getTo());
+            entry.writeLong(offset);
+            entry.writeInt(length);
+            entry.flush();
+        } catch (IOException e) {
+            logger.warn("Could not record " + signal + " " + window + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    private void roll() throws IOException {
+        close();
+        Files.createDirectories(this.directory);
+        int number = 0;
+        for (Path segment : segments()) {
+            number = Math.max(number, number(segment) + 1);
+        }
+        Path segment = this.directory.resolve(String.format("%08d.seg", number));
+        this.segment = Files.newOutputStream(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.index = Files.newOutputStream(index(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.size = 0;
+        logger.info("Recording to " + segment);
+    }
+
+    public synchronized void close() {
+        try {
+            if (this.segment != null) {
+                this.segment.close();
+            }
+            if (this.index != null) {
+                this.index.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not close recording in " + this.directory + ": " + e.getMessage());
+        }
+        this.segment = null;
+        this.index = null;
+    }
+
+    /**
+     * @return the recorded windows overlapping [from, to], ordered by window start, then recording order
+     */
+    public List<Entry> entries(long from, long to) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : segments()) {
+            if (!Files.isReadable(index(segment))) {
+                continue;
+            }
+            MappedByteBuffer data;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(index(segment)));
+            // a trailing partial entry was torn by a crash
+            while (index.remaining() >= INDEX_ENTRY) {
+                long start = index.getLong();
+                long end = index.getLong();
+                long offset = index.getLong();
+                int length = index.getInt();
+                if (end < from || start > to || offset + length > data.capacity()) {
+                    continue;
+                }
+                entries.add(read(data, new PLMTimeWindow(start, end), (int) offset));
+            }
+        }
+        // stable, so the windows of one start keep the order they were recorded in
+        entries.sort((a, b) -> Long.compare(a.window.getFrom(), b.window.getFrom()));
+        return entries;
+    }
+
+    /**
+     * @return the signals that have recorded windows
+     */
+    public Collection<PLMSignal> signals() throws IOException {
+        Map<String, PLMSignal> signals = new LinkedHashMap<>();
+        for (Entry entry : entries(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            signals.putIfAbsent(entry.signal.getId() + "|" + entry.signal.getUrn(), entry.signal);
+        }
+        return signals.values();
+    }
+
+    private static Entry read(MappedByteBuffer segment, PLMTimeWindow window, int offset) {
+        ByteBuffer record = segment.duplicate();
+        record.position(offset);
+        String name = readUTF(record);
+        String id = readUTF(record);
+        String urn = readUTF(record);
+        int length = record.getInt();
+        return new Entry(segment, new PLMSignal(name, id, urn), window, record.position(), length);
+    }
+
+    /**
+     * Reads what DataOutput.writeUTF wrote, for the ASCII and BMP text of names and URNs.
+     */
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segments() throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("\\d+\\.seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static int number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - 4));
+    }
+
+    private static Path index(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+    }
+}
@@ -0,0 +1,214 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.exception.ParseException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensors of a model with their instance id and the URNs of their sample properties, as listed
+ * by bkd/q_search. Catalogues are kept per server, repository and model in memory and in a file
+ * under the data directory, so adapters start from the last known catalogue and only the first
+ * start ever waits for the download. Catalogues older than the TTL are refreshed in the background.
+ */
+public class PLMSensorCatalogue {
+
+    interface Download {
+        JSONArray download() throws ParseException;
+    }
+
+    public static class Sensor {
+        private final String name;
+        private final String id;
+        private final List<String> urns;
+
+        Sensor(String name, String id, List<String> urns) {
+            this.name = name;
+            this.id = id;
+            this.urns = urns;
+        }
+
+        public String getName() {  return this.name;}
+        public String getId() {  return this.id;}
+        public List<String> getUrns() {  return this.urns;}
+    }
+
+    private static final long TTL = TimeUnit.HOURS.toMillis(6);
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMSensorCatalogue.class);
+    private static final Map<String, PLMSensorCatalogue> catalogues = new ConcurrentHashMap<>();
+    private static final Map<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "plm-catalogue-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Sensor> sensors;
+    private final long fetched;
+
+    private PLMSensorCatalogue(Map<String, Sensor> sensors, long fetched) {
+        this.sensors = sensors;
+        this.fetched = fetched;
+    }
+
+    public Sensor get(String name) {
+        return this.sensors.get(name);
+    }
+
+    public Collection<Sensor> sensors() {
+        return Collections.unmodifiableCollection(this.sensors.values());
+    }
+
+    /**
+     * @return the known catalogue of the configured model, downloading it only if there is none yet
+     */
+    public static PLMSensorCatalogue of(PLMHttpConfig config, Download download) throws ParseException {
+        String key = key(config);
+        PLMSensorCatalogue catalogue = catalogues.computeIfAbsent(key, k -> load(file(k)));
+        if (catalogue == null) {
+            return refresh(config, download);
+        }
+        if (System.currentTimeMillis() - catalogue.fetched > TTL && refreshing.putIfAbsent(key, true) == null) {
+            refresher.execute(() -> {
+                try {
+                    refresh(config, download);
+                } catch (ParseException e) {
+                    logger.warn("Could not refresh sensor catalogue of " + config.getModel() + ": " + e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        }
+        return catalogue;
+    }
+
+    /**
+     * @return a catalogue of just the given signals, e.g. the signals of a recording
+     */
+    static PLMSensorCatalogue of(Collection<PLMSignal> signals) {
+        Map<String, Sensor> index = new LinkedHashMap<>();
+        for (PLMSignal signal : signals) {
+            index.computeIfAbsent(signal.getName(), name -> new Sensor(name, signal.getId(), new ArrayList<>())).urns.add(signal.getUrn());
+        }
+        return new PLMSensorCatalogue(index, System.currentTimeMillis());
+    }
+
+    /**
+     * Downloads the catalogue right away, e.g. because a configured sensor is not known yet.
+     */
+    public static PLMSensorCatalogue refresh(PLMHttpConfig config, Download download) throws ParseException {
+        String key = key(config);
+        PLMSensorCatalogue catalogue = parse(download.download(), System.currentTimeMillis());
+        catalogues.put(key, catalogue);
+        catalogue.store(file(key));
+        logger.info("Sensor catalogue of " + config.getModel() + " refreshed, " + catalogue.sensors.size() + " sensors");
+        return catalogue;
+    }
+
+    private static boolean checkIfDigit(String val_part) {
+        boolean isNumber = true;
+        for (int i = 0; i < val_part.length(); i++) {
+            char ch = val_part.charAt(i);
+            if (!Character.isDigit(ch)) {
+                isNumber = false;
+                break;
+            }
+        }
+        return isNumber;
+    }
+
+    static PLMSensorCatalogue parse(JSONArray sensors, long fetched) {
+        Map<String, Sensor> index = new LinkedHashMap<>();
+        for (int i = 0; i < sensors.length(); i++) {
+            JSONObject element_info = sensors.getJSONObject(i).getJSONObject("bkdn_elem_info");
+            JSONArray sensor_properties = element_info.getJSONArray("properties");
+            int num_of_property = sensor_properties.length();
+
+            if (num_of_property > 1) {
+                List<String> urns = new ArrayList<>();
+                for (int j = 0; j < num_of_property; j++) {
+                    JSONObject property = sensor_properties.getJSONObject(j);
+                    String[] val_parts = property.getString("val").split(" ");
+                    boolean number_of_items = checkIfDigit(val_parts[0]);
+                    if (val_parts.length == 2 && val_parts[1].equals("items") && number_of_items) {
+                        urns.add(property.getString("name").replace(":", "%3A"));
+                    }
+                }
+                String name = String.valueOf(element_info.get("name"));
+                index.putIfAbsent(name, new Sensor(name, String.valueOf(element_info.get("instance_id")), urns));
+            }
+        }
+        return new PLMSensorCatalogue(index, fetched);
+    }
+
+    private static PLMSensorCatalogue load(Path file) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JSONObject stored = new JSONObject(new JSONTokener(reader));
+            Map<String, Sensor> index = new LinkedHashMap<>();
+            JSONArray sensors = stored.getJSONArray("sensors");
+            for (int i = 0; i < sensors.length(); i++) {
+                JSONObject sensor = sensors.getJSONObject(i);
+                List<String> urns = new ArrayList<>();
+                for (Object urn : sensor.getJSONArray("urns")) {
+                    urns.add(String.valueOf(urn));
+                }
+                index.put(sensor.getString("name"), new Sensor(sensor.getString("name"), sensor.getString("id"), urns));
+            }
+            return new PLMSensorCatalogue(index, stored.getLong("fetched"));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable sensor catalogue " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(Path file) {
+        JSONArray sensors = new JSONArray();
+        for (Sensor sensor : this.sensors.values()) {
+            sensors.put(new JSONObject().put("name", sensor.name).put("id", sensor.id).put("urns", sensor.urns));
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new JSONObject().put("fetched", this.fetched).put("sensors", sensors).write(writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not store sensor catalogue " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(PLMHttpConfig config) {
+        return config.getBaseUrl() + "|" + config.getRepository() + "|" + config.getModel();
+    }
+
+    private static Path file(String key) {
+        String model = key.substring(key.lastIndexOf('|') + 1).replaceAll("[^A-Za-z0-9_.-]", "_");
+        return PLMHttpUtils.getDataDirectory().resolve("catalogue")
+                .resolve(model + "-" + Integer.toHexString(key.hashCode()) + ".json");
+    }
+}
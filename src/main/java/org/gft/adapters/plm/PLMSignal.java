@@ -0,0 +1,71 @@
+package org.gft.adapters.plm;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * One sensor property the adapter ingests: the sensor name and instance id from the
+ * q_search catalogue plus the URN of the selected property (escaped for use in URLs).
+ */
+public class PLMSignal {
+
+    public static final String SIGNAL_KEY = "signal";
+    public static final String URN_KEY = "urn";
+
+    private final String name;
+    private final String id;
+    private final String urn;
+
+    public PLMSignal(String name, String id, String urn) {
+        this.name = name;
+        this.id = id;
+        this.urn = urn;
+    }
+
+    public String getName() {  return this.name;}
+    public String getId() {  return this.id;}
+    public String getUrn() {  return this.urn;}
+
+    /**
+     * @return the property URN as the server reports it, without URL escaping
+     */
+    public String getPlainUrn() {
+        return this.urn.replace("%3A", ":");
+    }
+
+    /**
+     * Turns a glob with * and ? wildcards into a pattern, every other character is literal.
+     */
+    public static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String literal : glob.split("((?<=[*?])|(?=[*?]))")) {
+            if (literal.equals("*")) {
+                regex.append(".*");
+            } else if (literal.equals("?")) {
+                regex.append('.');
+            } else if (!literal.isEmpty()) {
+                regex.append(Pattern.quote(literal));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PLMSignal)) {
+            return false;
+        }
+        PLMSignal other = (PLMSignal) o;
+        return this.id.equals(other.id) && this.urn.equals(other.urn);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.id, this.urn);
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "/" + getPlainUrn();
+    }
+}
@@ -0,0 +1,23 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.exception.ParseException;
+
+/**
+ * Raised when the TruePLM server asks us to slow down (HTTP 429 or 503).
+ */
+public class PLMThrottledException extends ParseException {
+
+    private final long retry_after;
+
+    public PLMThrottledException(String message, long retry_after) {
+        super(message);
+        this.retry_after = retry_after;
+    }
+
+    /**
+     * @return milliseconds the server asked us to wait before the next request
+     */
+    public long getRetryAfter() {
+        return this.retry_after;
+    }
+}
@@ -0,0 +1,38 @@
+package org.gft.adapters.plm;
+
+/**
+ * Immutable time range [from, to] in epoch milliseconds, bounds inclusive as aggr_exp_dt treats them.
+ */
+public final class PLMTimeWindow {
+
+    private final long from;
+    private final long to;
+
+    public PLMTimeWindow(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public long getFrom() {  return this.from;}
+    public long getTo() {  return this.to;}
+    public long length() {  return this.to - this.from;}
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PLMTimeWindow)) {
+            return false;
+        }
+        PLMTimeWindow other = (PLMTimeWindow) o;
+        return this.from == other.from && this.to == other.to;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.from) * 31 + Long.hashCode(this.to);
+    }
+
+    @Override
+    public String toString() {
+        return this.from + ".." + this.to;
+    }
+}
@@ -0,0 +1,176 @@
+package org.gft.adapters.plm;
+
+import org.apache.streampipes.connect.api.exception.ParseException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bearer tokens shared by all adapters logging in with the same credentials against the same
+ * server. A token is reused until it expires or the server rejects it, and refreshed in the
+ * background shortly before it expires as long as somebody used it since the last refresh.
+ * Every entry has at most one pending background refresh, cancelled once the last running
+ * adapter released the entry.
+ */
+public class PLMTokenCache {
+
+    interface Login {
+        String login() throws ParseException;
+    }
+
+    private static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(30);
+    private static final long REFRESH_MARGIN = TimeUnit.SECONDS.toMillis(60);
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMTokenCache.class);
+    private static final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "plm-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Entry {
+        private final String key;
+        private Login login;
+        private String token;
+        private long expires;
+        private boolean used;
+        // running adapters of these credentials
+        private int users;
+        private ScheduledFuture<?> refresh;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    public static String token(PLMHttpConfig config, Login login) throws ParseException {
+        Entry entry = tokens.computeIfAbsent(key(config), Entry::new);
+        synchronized (entry) {
+            entry.login = login;
+            if (entry.token == null || System.currentTimeMillis() >= entry.expires) {
+                refresh(entry);
+            }
+            entry.used = true;
+            return entry.token;
+        }
+    }
+
+    /**
+     * Drops a token the server answered with 401, unless it has been replaced already.
+     */
+    public static void invalidate(PLMHttpConfig config, String token) {
+        Entry entry = tokens.get(key(config));
+        if (entry != null) {
+            synchronized (entry) {
+                if (token.equals(entry.token)) {
+                    entry.token = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the token of a running adapter refreshed until {@link #release} is called.
+     */
+    public static void retain(PLMHttpConfig config) {
+        Entry entry = tokens.computeIfAbsent(key(config), Entry::new);
+        synchronized (entry) {
+            entry.users++;
+        }
+    }
+
+    public static void release(PLMHttpConfig config) {
+        Entry entry = tokens.get(key(config));
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.users = Math.max(0, entry.users - 1);
+            if (entry.users == 0) {
+                cancel(entry);
+                tokens.remove(entry.key, entry);
+            }
+        }
+    }
+
+    private static void refresh(Entry entry) throws ParseException {
+        entry.token = entry.login.login();
+        PLMMetrics.tokenRefreshed();
+        entry.expires = expiry(entry.token);
+        entry.used = false;
+        long delay = Math.max(0, entry.expires - REFRESH_MARGIN - System.currentTimeMillis());
+        // replaces the refresh scheduled for the previous token
+        cancel(entry);
+        entry.refresh = refresher.schedule(() -> refreshInBackground(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void cancel(Entry entry) {
+        if (entry.refresh != null) {
+            entry.refresh.cancel(false);
+            entry.refresh = null;
+        }
+    }
+
+    private static void refreshInBackground(Entry entry) {
+        synchronized (entry) {
+            entry.refresh = null;
+            if (!entry.used) {
+                // nobody asked for the token during its whole lifetime, stop refreshing it
+                entry.token = null;
+                if (entry.users == 0) {
+                    tokens.remove(entry.key, entry);
+                }
+                return;
+            }
+            try {
+                refresh(entry);
+            } catch (ParseException e) {
+                logger.warn("Could not refresh token, logging in again on next use: " + e.getMessage());
+                entry.token = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the exp claim if the token is a JWT, otherwise assumes the default lifetime.
+     */
+    private static long expiry(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+                long exp = new JSONObject(payload).optLong("exp", 0);
+                if (exp > 0) {
+                    return TimeUnit.SECONDS.toMillis(exp);
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Token is not a JWT, assuming a lifetime of " + DEFAULT_TTL + " ms");
+            }
+        }
+        return System.currentTimeMillis() + DEFAULT_TTL;
+    }
+
+    private static String key(PLMHttpConfig config) {
+        // the password is part of the key so a wrong one never gets somebody else's token
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(config.getPassword().getBytes(StandardCharsets.UTF_8));
+            return config.getBaseUrl() + "|" + config.getGroup() + "|" + config.getUsername() + "|"
+                    + Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.gft.adapters.plm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped aggr_exp_dt responses of closed windows, stored under the data directory by a hash of
+ * server, model, sensor, URN and window bounds. Entries are read back through memory mapped files
+ * and evicted least recently used first once the cache exceeds PLM_WINDOW_CACHE_MB.
+ * Windows ending less than SETTLE before now are never cached, the server may still add samples.
+ */
+public class PLMWindowCache {
+
+    private static final long SETTLE = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Logger logger = LoggerFactory.getLogger(PLMWindowCache.class);
+    private static PLMWindowCache instance;
+
+    private final Path directory;
+    private final long budget;
+    // access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    PLMWindowCache(Path directory, long budget) {
+        this.directory = directory;
+        this.budget = budget;
+        // also with the cache turned off, so that what an earlier run left behind is removed
+        scan();
+    }
+
+    public static synchronized PLMWindowCache get() {
+        if (instance == null) {
+            instance = new PLMWindowCache(PLMHttpUtils.getDataDirectory().resolve("windows"), PLMHttpUtils.getWindowCacheBytes());
+        }
+        return instance;
+    }
+
+    public static boolean isClosed(long to) {
+        return to < System.currentTimeMillis() - SETTLE;
+    }
+
+    public static String key(PLMHttpConfig config, PLMSignal signal, PLMTimeWindow window) {
+        String key = config.getBaseUrl() + "|" + config.getRepository() + "|" + config.getModel() + "|"
+                + signal.getId() + "|" + signal.getUrn() + "|" + window.getFrom() + "|" + window.getTo();
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the cached response, or null if the window is not cached
+     */
+    public InputStream read(String key) {
+        synchronized (this) {
+            if (this.entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = file(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // the modification time carries the recency over to the next start
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new GZIPInputStream(new MappedInputStream(buffer), 65536);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable cached window " + file + ": " + e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * @return false if PLM_WINDOW_CACHE_MB turned the cache off
+     */
+    public boolean isEnabled() {
+        return this.budget > 0;
+    }
+
+    public void write(String key, byte[] data) {
+        if (this.budget <= 0) {
+            return;
+        }
+        try {
+            Path temp = temp();
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 65536)) {
+                out.write(data);
+            }
+            add(key, temp);
+        } catch (IOException e) {
+            logger.warn("Could not cache window " + key + ": " + e.getMessage());
+        }
+    }
+
+    private Path temp() throws IOException {
+        Files.createDirectories(this.directory);
+        return Files.createTempFile(this.directory, "window", ".tmp");
+    }
+
+    private void add(String key, Path temp) throws IOException {
+        Path file = file(key);
+        Files.createDirectories(file.getParent());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long length = Files.size(file);
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = this.entries.put(key, length);
+            this.size += length - (previous == null ? 0 : previous);
+            evicted = evict(key);
+        }
+        for (String old : evicted) {
+            Files.deleteIfExists(file(old));
+        }
+    }
+
+    /**
+     * Drops least recently used entries until the cache fits its budget again.
+     *
+     * @param keep an entry that stays even if it does not fit, or null
+     * @return the keys of the dropped entries, whose files are still to be deleted
+     */
+    private List<String> evict(String keep) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> oldest = this.entries.entrySet().iterator();
+        while (this.size > Math.max(this.budget, 0) && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            this.size -= entry.getValue();
+            evicted.add(entry.getKey());
+            oldest.remove();
+        }
+        return evicted;
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Long length = this.entries.remove(key);
+            if (length != null) {
+                this.size -= length;
+            }
+        }
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            logger.debug("Could not delete cached window " + key);
+        }
+    }
+
+    private Path file(String key) {
+        return this.directory.resolve(key.substring(0, 2)).resolve(key + ".gz");
+    }
+
+    private void scan() {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(this.directory, 2)) {
+            List<Path> found = files.filter(Files::isRegularFile).collect(Collectors.toList());
+            List<Path> cached = new ArrayList<>();
+            for (Path file : found) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".gz")) {
+                    cached.add(file);
+                } else if (name.startsWith("window") && name.endsWith(".tmp")) {
+                    // left behind by a write that never finished
+                    Files.deleteIfExists(file);
+                }
+            }
+            cached.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+            for (Path file : cached) {
+                String name = file.getFileName().toString();
+                long length = Files.size(file);
+                this.entries.put(name.substring(0, name.length() - 3), length);
+                this.size += length;
+            }
+            // the budget may have shrunk since the last run, down to 0 for a disabled cache
+            for (String old : evict(null)) {
+                Files.deleteIfExists(file(old));
+            }
+        } catch (IOException e) {
+            logger.warn("Could not scan window cache " + this.directory + ": " + e.getMessage());
+        }
+    }
+
+    static class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
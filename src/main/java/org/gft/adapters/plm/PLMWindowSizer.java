@@ -0,0 +1,24 @@
+package org.gft.adapters.plm;
+
+/**
+ * Sizes the next request window from the number of events the previous one returned.
+ * Empty windows are doubled, windows above the high water mark are scaled down towards the
+ * target event count, everything in between is kept.
+ */
+public class PLMWindowSizer {
+
+    private static final long MIN_WINDOW = 60 * 1000L;
+    private static final long MAX_WINDOW = 24 * 60 * 60 * 1000L;
+    private static final int TARGET_EVENTS = 5000;
+    private static final int HIGH_EVENTS = 2 * TARGET_EVENTS;
+
+    public long next(long window, int events) {
+        long next = window;
+        if (events == 0) {
+            next = window * 2;
+        } else if (events > HIGH_EVENTS) {
+            next = window * TARGET_EVENTS / events;
+        }
+        return Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, next));
+    }
+}
@@ -0,0 +1,88 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PLMCheckpointStoreTest {
+
+    private final PLMSignal speed = new PLMSignal("Sensor", "1", "urn:speed");
+    private final PLMSignal torque = new PLMSignal("Sensor", "1", "urn:torque");
+
+    @Test
+    public void unknownSignalHasNoCheckpoint() throws IOException {
+        PLMCheckpointStore store = new PLMCheckpointStore(file());
+        assertEquals(-1, store.get(this.speed));
+    }
+
+    @Test
+    public void checkpointsOnlyMoveForward() throws IOException {
+        PLMCheckpointStore store = new PLMCheckpointStore(file());
+        store.commit(this.speed, 2000);
+        store.commit(this.speed, 1000);
+        store.commit(this.speed, 2000);
+        assertEquals(2000, store.get(this.speed));
+        store.commit(this.speed, 3000);
+        assertEquals(3000, store.get(this.speed));
+    }
+
+    @Test
+    public void checkpointsSurviveARestart() throws IOException {
+        Path file = file();
+        PLMCheckpointStore store = new PLMCheckpointStore(file);
+        store.commit(this.speed, 1000);
+        store.commit(this.torque, 500);
+        store.commit(this.speed, 4000);
+        store.commit(this.speed, 3000);
+
+        PLMCheckpointStore restarted = new PLMCheckpointStore(file);
+        assertEquals(4000, restarted.get(this.speed));
+        assertEquals(500, restarted.get(this.torque));
+        restarted.commit(this.speed, 2000);
+        assertEquals(4000, restarted.get(this.speed));
+    }
+
+    @Test
+    public void lineCutShortByACrashIsIgnored() throws IOException {
+        Path file = file();
+        PLMCheckpointStore store = new PLMCheckpointStore(file);
+        store.commit(this.speed, 1000);
+        Files.write(file, "1\turn:speed\t20".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(file, "\n1\turn:torque".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        PLMCheckpointStore restarted = new PLMCheckpointStore(file);
+        // the torn line of 2000 reads as 20 and must not move the checkpoint back
+        assertEquals(1000, restarted.get(this.speed));
+        assertEquals(-1, restarted.get(this.torque));
+    }
+
+    @Test
+    public void adaptersOnTheSameModelKeepTheirOwnCheckpoints() {
+        String model = "model-" + System.nanoTime();
+        PLMHttpConfig speed = new PLMHttpConfig("u", "p", model, "Sensor", "2023-01-01 00:00:00", "CurrentDateTime");
+        PLMHttpConfig later = new PLMHttpConfig("u", "p", model, "Sensor", "2023-06-01 00:00:00", "CurrentDateTime");
+        PLMHttpConfig both = new PLMHttpConfig("u", "p", model, "Sensor, Other", "2023-01-01 00:00:00", "CurrentDateTime");
+        PLMCheckpointStore store = PLMCheckpointStore.of(speed);
+        assertNotSame(store, PLMCheckpointStore.of(later));
+        assertNotSame(store, PLMCheckpointStore.of(both));
+        // a restarted adapter with the same configuration resumes from its own checkpoints
+        assertSame(store, PLMCheckpointStore.of(new PLMHttpConfig("u", "p", model, "Sensor", "2023-01-01 00:00:00", "CurrentDateTime")));
+
+        store.commit(this.speed, 5000);
+        assertEquals(5000, store.get(this.speed));
+        assertEquals(-1, PLMCheckpointStore.of(later).get(this.speed));
+        assertEquals(-1, PLMCheckpointStore.of(both).get(this.speed));
+    }
+
+    private static Path file() throws IOException {
+        return Files.createTempDirectory("checkpoints").resolve("model.log");
+    }
+}
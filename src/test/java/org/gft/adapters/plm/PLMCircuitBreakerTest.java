@@ -0,0 +1,93 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PLMCircuitBreakerTest {
+
+    private static final long PAUSE = 100;
+
+    @Test
+    public void opensAfterARowOfFailures() throws Exception {
+        PLMCircuitBreaker breaker = new PLMCircuitBreaker("http://opens", PAUSE);
+        for (int i = 0; i < 4; i++) {
+            breaker.acquire();
+            breaker.failure(0);
+        }
+        assertEquals(PLMCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.failure(0);
+        assertEquals(PLMCircuitBreaker.State.OPEN, breaker.getState());
+        assertRejected(breaker);
+    }
+
+    @Test
+    public void successResetsTheFailures() throws Exception {
+        PLMCircuitBreaker breaker = new PLMCircuitBreaker("http://resets", PAUSE);
+        for (int i = 0; i < 4; i++) {
+            breaker.failure(0);
+        }
+        breaker.success();
+        for (int i = 0; i < 4; i++) {
+            breaker.failure(0);
+        }
+        assertEquals(PLMCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.acquire();
+    }
+
+    @Test
+    public void trialAfterThePauseClosesIt() throws Exception {
+        PLMCircuitBreaker breaker = opened("http://closes");
+        Thread.sleep(PAUSE + 20);
+        breaker.acquire();
+        assertEquals(PLMCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // a single trial at a time
+        assertRejected(breaker);
+        breaker.success();
+        assertEquals(PLMCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.acquire();
+    }
+
+    @Test
+    public void failedTrialDoublesThePause() throws Exception {
+        PLMCircuitBreaker breaker = opened("http://doubles");
+        Thread.sleep(PAUSE + 20);
+        breaker.acquire();
+        breaker.failure(0);
+        assertEquals(PLMCircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(PAUSE + 20);
+        // still within the doubled pause
+        assertRejected(breaker);
+        Thread.sleep(PAUSE + 20);
+        breaker.acquire();
+        assertEquals(PLMCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void retryAfterLengthensThePause() throws Exception {
+        PLMCircuitBreaker breaker = new PLMCircuitBreaker("http://retry-after", PAUSE);
+        for (int i = 0; i < 5; i++) {
+            breaker.failure(PAUSE * 4);
+        }
+        Thread.sleep(PAUSE + 20);
+        assertRejected(breaker);
+    }
+
+    private static PLMCircuitBreaker opened(String server) {
+        PLMCircuitBreaker breaker = new PLMCircuitBreaker(server, PAUSE);
+        for (int i = 0; i < 5; i++) {
+            breaker.failure(0);
+        }
+        return breaker;
+    }
+
+    private static void assertRejected(PLMCircuitBreaker breaker) {
+        try {
+            breaker.acquire();
+            fail("request let through the open circuit to " + breaker.getServer());
+        } catch (PLMCircuitBreaker.OpenException e) {
+            // expected
+        }
+    }
+}
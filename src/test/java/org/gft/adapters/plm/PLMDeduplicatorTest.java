@@ -0,0 +1,162 @@
+package org.gft.adapters.plm;
+
+import io.micrometer.core.instrument.Counter;
+import org.apache.streampipes.connect.api.IAdapterPipeline;
+import org.apache.streampipes.connect.api.IAdapterPipelineElement;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PLMDeduplicatorTest {
+
+    private final PLMSignal speed = new PLMSignal("Sensor", "1", "urn:speed");
+    private final PLMSignal torque = new PLMSignal("Sensor", "1", "urn:torque");
+    private final List<Long> emitted = new ArrayList<>();
+    private String model;
+    private PLMDeduplicator deduplicator;
+
+    @Before
+    public void setUp() {
+        this.model = "dedup" + System.nanoTime();
+        PLMHttpConfig config = new PLMHttpConfig("u", "p", this.model, "Sensor", "2023-01-01 00:00:00", "CurrentDateTime");
+        this.deduplicator = new PLMDeduplicator(new Collecting(this.emitted), new PLMMetrics.Window(config));
+    }
+
+    @Test
+    public void sharedBoundaryIsEmittedOnce() {
+        this.deduplicator.select(this.speed);
+        process(1, 2, 3);
+        // the next window starts at the end of the previous one
+        process(3, 4, 5);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), this.emitted);
+        assertEquals(1, dropped("duplicate"), 0);
+    }
+
+    @Test
+    public void lateSampleNotSeenYetPassesOnce() {
+        this.deduplicator.select(this.speed);
+        process(1, 3, 2, 2);
+        assertEquals(Arrays.asList(1L, 3L, 2L), this.emitted);
+        assertEquals(3, this.deduplicator.newest(this.speed));
+    }
+
+    @Test
+    public void sampleAtOrBelowTheWatermarkIsAStraggler() {
+        this.deduplicator.select(this.speed);
+        // one more than the ring holds, 100 leaves it
+        for (long t = 100; t <= 100 + PLMDeduplicator.RECENT; t++) {
+            process(t);
+        }
+        process(50);
+        assertEquals(PLMDeduplicator.RECENT + 1, this.emitted.size());
+        assertEquals(1, dropped("straggler"), 0);
+    }
+
+    @Test
+    public void lateSampleLeavingTheRingDoesNotLetEmittedOnesThrough() {
+        this.deduplicator.select(this.speed);
+        process(1000, 10);
+        // fills the ring, then 1000 leaves it and the late 10 is the first one inserted
+        for (long t = 1001; t < 1000 + PLMDeduplicator.RECENT - 1; t++) {
+            process(t);
+        }
+        process(2000);
+        int emitted = this.emitted.size();
+        // a retried window brings 1000 again
+        process(1000);
+        assertEquals(emitted, this.emitted.size());
+        assertEquals(1, dropped("straggler"), 0);
+    }
+
+    @Test
+    public void forgottenWindowPassesAgain() {
+        this.deduplicator.select(this.speed);
+        process(1, 2, 3);
+        for (long t = 10; t < 10 + PLMDeduplicator.RECENT; t++) {
+            process(t);
+        }
+        this.emitted.clear();
+        // the window after 3 failed in the pipeline and is fetched again
+        this.deduplicator.forget(this.speed, 3);
+        process(3, 10, 11, 300);
+        assertEquals(Arrays.asList(10L, 11L, 300L), this.emitted);
+        assertEquals(300, this.deduplicator.newest(this.speed));
+    }
+
+    @Test
+    public void signalsAreTrackedApart() {
+        this.deduplicator.select(this.speed);
+        process(1, 2);
+        this.deduplicator.select(this.torque);
+        process(1, 2);
+        assertEquals(4, this.emitted.size());
+        assertEquals(Long.MIN_VALUE, this.deduplicator.newest(new PLMSignal("Sensor", "2", "urn:speed")));
+    }
+
+    @Test
+    public void filterRemovesSeenSamplesFromADecodedWindow() {
+        this.deduplicator.select(this.speed);
+        process(1, 2, 3);
+        PLMSampleBuffer buffer = new PLMSampleBuffer(false);
+        for (long t = 2; t <= 5; t++) {
+            buffer.addRow();
+            buffer.putLong(PLMAggregator.TIMESTAMP_KEY, t);
+        }
+        this.deduplicator.filter(buffer, this.speed);
+        assertArrayEquals(new long[]{4, 5}, (long[]) buffer.getColumn(PLMAggregator.TIMESTAMP_KEY).slice(0, buffer.size()));
+        assertEquals(5, this.deduplicator.newest(this.speed));
+    }
+
+    private void process(long... timestamps) {
+        for (long timestamp : timestamps) {
+            Map<String, Object> sample = new HashMap<>();
+            sample.put(PLMAggregator.TIMESTAMP_KEY, timestamp);
+            this.deduplicator.process(sample);
+        }
+    }
+
+    private double dropped(String reason) {
+        Counter counter = PLMMetrics.registry().find("plm.samples.dropped").tag("model", this.model).tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static class Collecting implements IAdapterPipeline {
+
+        private final List<Long> timestamps;
+
+        private Collecting(List<Long> timestamps) {
+            this.timestamps = timestamps;
+        }
+
+        @Override
+        public void process(Map<String, Object> event) {
+            this.timestamps.add(((Number) event.get(PLMAggregator.TIMESTAMP_KEY)).longValue());
+        }
+
+        @Override
+        public List<IAdapterPipelineElement> getPipelineElements() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void setPipelineElements(List<IAdapterPipelineElement> pipelineElements) {
+        }
+
+        @Override
+        public void changePipelineSink(IAdapterPipelineElement pipelineSink) {
+        }
+
+        @Override
+        public IAdapterPipelineElement getPipelineSink() {
+            return null;
+        }
+    }
+}
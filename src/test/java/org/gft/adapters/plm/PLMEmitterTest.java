@@ -0,0 +1,220 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PLMEmitterTest {
+
+    @Test
+    public void blockedProducersOnAllPollThreadsStillDrain() throws InterruptedException {
+        // more adapters than poll threads, each producer blocks on a full queue of one
+        int adapters = 100;
+        int windows = 5;
+        CountDownLatch emitted = new CountDownLatch(adapters * windows);
+        List<PLMEmitter<Integer>> emitters = new ArrayList<>();
+        for (int a = 0; a < adapters; a++) {
+            PLMEmitter<Integer> emitter = new PLMEmitter<>("test-" + a, 1, PLMEmitter.Policy.BLOCK, item -> {
+                sleep(1);
+                emitted.countDown();
+            }, item -> { }, () -> { });
+            emitters.add(emitter);
+            PLMScheduler.schedule(() -> {
+                try {
+                    for (int w = 0; w < windows; w++) {
+                        emitter.put(w);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 0);
+        }
+        assertTrue(emitted.await(20, TimeUnit.SECONDS));
+        emitters.forEach(PLMEmitter::close);
+    }
+
+    @Test
+    public void emittersShareTheEmissionPoolOneTaskEach() throws InterruptedException {
+        int adapters = 50;
+        int windows = 20;
+        CountDownLatch emitted = new CountDownLatch(adapters * windows);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        List<PLMEmitter<Integer>> emitters = new ArrayList<>();
+        for (int a = 0; a < adapters; a++) {
+            AtomicBoolean busy = new AtomicBoolean();
+            PLMEmitter<Integer> emitter = new PLMEmitter<>("shared-" + a, 2, PLMEmitter.Policy.BLOCK, item -> {
+                if (!busy.compareAndSet(false, true)) {
+                    overlapped.set(true);
+                }
+                threads.add(Thread.currentThread().getName());
+                sleep(1);
+                busy.set(false);
+                emitted.countDown();
+            }, item -> { }, () -> { });
+            emitters.add(emitter);
+            PLMScheduler.schedule(() -> {
+                try {
+                    for (int w = 0; w < windows; w++) {
+                        emitter.put(w);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 0);
+        }
+        assertTrue(emitted.await(20, TimeUnit.SECONDS));
+        emitters.forEach(PLMEmitter::close);
+        assertFalse(overlapped.get());
+        assertTrue(threads.size() <= 16);
+        for (String thread : threads) {
+            assertTrue(thread, thread.startsWith("plm-emit-"));
+        }
+    }
+
+    @Test
+    public void emitsInOrder() throws InterruptedException {
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch emitted = new CountDownLatch(50);
+        PLMEmitter<Integer> emitter = new PLMEmitter<>("order", 4, PLMEmitter.Policy.BLOCK, item -> {
+            seen.add(item);
+            emitted.countDown();
+        }, item -> { }, () -> { });
+        for (int i = 0; i < 50; i++) {
+            emitter.put(i);
+        }
+        assertTrue(emitted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) seen.get(i));
+        }
+        emitter.close();
+    }
+
+    @Test
+    public void dropNewestKeepsTheQueuedWindows() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger dropped = new AtomicInteger();
+        PLMEmitter<Integer> emitter = new PLMEmitter<>("newest", 2, PLMEmitter.Policy.DROP_NEWEST, item -> {
+            started.countDown();
+            await(release);
+            seen.add(item);
+        }, discarded::add, dropped::incrementAndGet);
+        emitter.put(0);
+        // the consumer holds 0, the queue takes 1 and 2
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++) {
+            emitter.put(i);
+        }
+        assertEquals(2, dropped.get());
+        assertEquals(Arrays.asList(3, 4), discarded);
+        release.countDown();
+        waitFor(() -> seen.size() == 3);
+        assertEquals(Arrays.asList(0, 1, 2), seen);
+        emitter.close();
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestWindows() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger dropped = new AtomicInteger();
+        PLMEmitter<Integer> emitter = new PLMEmitter<>("oldest", 2, PLMEmitter.Policy.DROP_OLDEST, item -> {
+            started.countDown();
+            await(release);
+            seen.add(item);
+        }, discarded::add, dropped::incrementAndGet);
+        emitter.put(0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 5; i++) {
+            emitter.put(i);
+        }
+        assertEquals(2, dropped.get());
+        assertEquals(Arrays.asList(1, 2), discarded);
+        release.countDown();
+        waitFor(() -> seen.size() == 3);
+        assertEquals(Arrays.asList(0, 3, 4), seen);
+        emitter.close();
+    }
+
+    @Test
+    public void emissionGoesOnAfterAnError() throws InterruptedException {
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        PLMEmitter<Integer> emitter = new PLMEmitter<>("error", 4, PLMEmitter.Policy.BLOCK, item -> {
+            if (item == 1) {
+                throw new IllegalStateException("pipeline down");
+            }
+            seen.add(item);
+        }, item -> { }, () -> { });
+        for (int i = 0; i < 3; i++) {
+            emitter.put(i);
+        }
+        waitFor(() -> seen.size() == 2);
+        assertEquals(Arrays.asList(0, 2), seen);
+        emitter.close();
+    }
+
+    @Test
+    public void closeReleasesBlockedProducers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        PLMEmitter<Integer> emitter = new PLMEmitter<>("close", 1, PLMEmitter.Policy.BLOCK,
+                item -> await(release), discarded::add, () -> { });
+        emitter.put(0);
+        emitter.put(1);
+        Thread producer = new Thread(() -> {
+            try {
+                emitter.put(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        emitter.close();
+        producer.join(5000);
+        assertTrue(!producer.isAlive());
+        assertTrue(discarded.contains(2));
+        release.countDown();
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PLMHttpConfigTest {
+
+    private static final long HOUR = 3600000;
+
+    @Test
+    public void fetchingRunsAheadOfDelivery() {
+        PLMHttpConfig config = config("2023-01-01 03:00:00");
+        long lowest = config.getLowestDate();
+        PLMTimeWindow first = config.nextWindow();
+        config.fetched(first);
+        PLMTimeWindow second = config.nextWindow();
+
+        assertEquals(lowest, first.getFrom());
+        assertEquals(first.getTo(), second.getFrom());
+        assertEquals(lowest, config.getCursor());
+        config.advance(first);
+        assertEquals(first.getTo(), config.getCursor());
+        assertEquals(first.getTo(), config.getFetchCursor());
+    }
+
+    @Test
+    public void rewindFetchesUndeliveredWindowsAgain() {
+        PLMHttpConfig config = config("2023-01-01 03:00:00");
+        PLMTimeWindow first = config.nextWindow();
+        config.fetched(first);
+        PLMTimeWindow second = config.nextWindow();
+        config.fetched(second);
+        config.advance(first);
+
+        config.rewind();
+        assertEquals(second.getFrom(), config.nextWindow().getFrom());
+        // a late delivery of an older window never moves the cursors back
+        config.advance(first);
+        assertEquals(first.getTo(), config.getFetchCursor());
+    }
+
+    @Test
+    public void exhaustedOnceEverythingWasDelivered() {
+        PLMHttpConfig config = config("2023-01-01 01:00:00");
+        PLMTimeWindow window = config.nextWindow();
+        assertEquals(config.getLowestDate() + HOUR, window.getTo());
+        config.fetched(window);
+        assertTrue(config.isFetched());
+        assertFalse(config.isExhausted());
+        config.advance(window);
+        assertTrue(config.isExhausted());
+    }
+
+    private static PLMHttpConfig config(String highest) {
+        PLMHttpConfig config = new PLMHttpConfig("u", "p", "model", "Sensor", "2023-01-01 00:00:00", highest);
+        config.setWindowMillis(HOUR);
+        return config;
+    }
+}
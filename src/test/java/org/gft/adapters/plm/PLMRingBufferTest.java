@@ -0,0 +1,118 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PLMRingBufferTest {
+
+    @Test
+    public void fullBufferRefusesOffers() {
+        PLMRingBuffer<Integer> buffer = new PLMRingBuffer<>(3);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertTrue(buffer.offer(3));
+        assertFalse(buffer.offer(4));
+        assertEquals(3, buffer.size());
+        assertEquals(1, (int) buffer.poll());
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+    }
+
+    @Test
+    public void emptyBufferPollsNull() {
+        PLMRingBuffer<Integer> buffer = new PLMRingBuffer<>(2);
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+        buffer.offer(1);
+        buffer.poll();
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void wrapsAroundInOrder() {
+        PLMRingBuffer<Integer> buffer = new PLMRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        // many rounds over the slots, with the buffer partly filled in between
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(next++));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, (int) buffer.poll());
+            }
+            assertTrue(buffer.offer(next++));
+            assertEquals(expected++, (int) buffer.poll());
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void capacityIsAtLeastOne() {
+        PLMRingBuffer<Integer> buffer = new PLMRingBuffer<>(0);
+        assertEquals(1, buffer.capacity());
+        assertTrue(buffer.offer(1));
+        assertFalse(buffer.offer(2));
+    }
+
+    @Test
+    public void concurrentProducersAndConsumersLoseNothing() throws InterruptedException {
+        exchange(8);
+    }
+
+    @Test
+    public void singleSlotLosesNothingEither() throws InterruptedException {
+        exchange(1);
+    }
+
+    private static void exchange(int capacity) throws InterruptedException {
+        int producers = 4;
+        int consumers = 2;
+        int items = 20000;
+        PLMRingBuffer<Integer> buffer = new PLMRingBuffer<>(capacity);
+        AtomicLong sum = new AtomicLong();
+        AtomicInteger taken = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (int i = 1; i <= items; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                while (taken.get() < producers * items) {
+                    Integer item = buffer.poll();
+                    if (item == null) {
+                        Thread.yield();
+                    } else {
+                        sum.addAndGet(item);
+                        taken.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        done.await();
+        assertEquals(producers * items, taken.get());
+        assertEquals((long) producers * items * (items + 1) / 2, sum.get());
+        assertTrue(buffer.isEmpty());
+    }
+}
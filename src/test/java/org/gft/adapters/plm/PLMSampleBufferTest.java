@@ -0,0 +1,109 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PLMSampleBufferTest {
+
+    @Test
+    public void sparseFieldsAreAbsent() {
+        PLMSampleBuffer buffer = new PLMSampleBuffer(false);
+        buffer.addRow();
+        buffer.putLong("timestamp", 1);
+        buffer.putLong("count", 10);
+        buffer.addRow();
+        buffer.putLong("timestamp", 2);
+        buffer.addRow();
+        buffer.putLong("timestamp", 3);
+        buffer.putDouble("value", 1.5);
+
+        Map<String, Object> row = buffer.row(1, null);
+        assertFalse(row.containsKey("count"));
+        assertNull(row.get("value"));
+        assertEquals(1, row.size());
+        assertArrayEquals(new long[]{10, 0, 0}, (long[]) buffer.getColumn("count").slice(0, 3));
+        assertArrayEquals(new double[]{0, 0, 1.5}, (double[]) buffer.getColumn("value").slice(0, 3), 0);
+    }
+
+    @Test
+    public void reusedBufferDoesNotLeakOldValues() {
+        PLMSampleBuffer buffer = new PLMSampleBuffer(false);
+        for (int i = 0; i < 3; i++) {
+            buffer.addRow();
+            buffer.putLong("count", 100 + i);
+            buffer.putDouble("value", 0.5 + i);
+        }
+        buffer.clear();
+        // the second window has the fields in its last row only
+        buffer.addRow();
+        buffer.putLong("timestamp", 1);
+        buffer.addRow();
+        buffer.putLong("timestamp", 2);
+        buffer.addRow();
+        buffer.putLong("timestamp", 3);
+        buffer.putLong("count", 7);
+        buffer.putDouble("value", 9.5);
+
+        assertArrayEquals(new long[]{0, 0, 7}, (long[]) buffer.getColumn("count").slice(0, 3));
+        assertArrayEquals(new double[]{0, 0, 9.5}, (double[]) buffer.getColumn("value").slice(0, 3), 0);
+        assertFalse(buffer.row(0, null).containsKey("count"));
+    }
+
+    @Test
+    public void integerColumnTurnsDecimal() {
+        PLMSampleBuffer buffer = new PLMSampleBuffer(true);
+        buffer.addRow();
+        buffer.putLong("value", 1);
+        buffer.addRow();
+        buffer.putDouble("value", 2.5);
+
+        assertEquals(PLMSampleBuffer.Type.DOUBLE, buffer.getColumn("value").getType());
+        assertEquals(1.0, buffer.row(0, null).get("value"));
+        assertEquals(2.5, buffer.row(1, null).get("value"));
+    }
+
+    @Test
+    public void removeCompactsRowsAndKeepsGaps() {
+        PLMSampleBuffer buffer = new PLMSampleBuffer(false);
+        for (int i = 0; i < 6; i++) {
+            buffer.addRow();
+            buffer.putLong("timestamp", i);
+            if (i % 2 == 0) {
+                buffer.putObject("text", "t" + i);
+            }
+        }
+        BitSet dropped = new BitSet();
+        dropped.set(0);
+        dropped.set(3);
+        buffer.remove(dropped);
+
+        assertEquals(4, buffer.size());
+        assertArrayEquals(new long[]{1, 2, 4, 5}, (long[]) buffer.getColumn("timestamp").slice(0, 4));
+        assertArrayEquals(new Object[]{null, "t2", "t4", null}, (Object[]) buffer.getColumn("text").slice(0, 4));
+        assertTrue(buffer.row(1, null).containsKey("text"));
+        assertFalse(buffer.row(3, null).containsKey("text"));
+    }
+
+    @Test
+    public void rowIsTaggedWithSignal() {
+        PLMSampleBuffer buffer = new PLMSampleBuffer(false);
+        buffer.addRow();
+        buffer.putLong("timestamp", 1);
+        PLMSignal signal = new PLMSignal("Sensor", "1", "urn:speed");
+
+        Map<String, Object> row = buffer.row(0, signal);
+        assertEquals("Sensor", row.get(PLMSignal.SIGNAL_KEY));
+        assertEquals(3, row.size());
+        row.put("extra", true);
+        assertEquals(true, row.get("extra"));
+        assertEquals(1L, row.get("timestamp"));
+    }
+}
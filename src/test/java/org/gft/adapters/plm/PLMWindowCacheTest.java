@@ -0,0 +1,132 @@
+package org.gft.adapters.plm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PLMWindowCacheTest {
+
+    private static final String FIRST = "aa01";
+    private static final String SECOND = "bb02";
+    private static final String THIRD = "cc03";
+
+    @Test
+    public void cachedWindowReadsBackUnchanged() throws IOException {
+        PLMWindowCache cache = new PLMWindowCache(Files.createTempDirectory("windows"), 1 << 20);
+        byte[] data = body(1);
+        cache.write(FIRST, data);
+        assertArrayEquals(data, read(cache, FIRST));
+        assertNull(cache.read(SECOND));
+    }
+
+    @Test
+    public void disabledCacheKeepsNothing() throws IOException {
+        PLMWindowCache cache = new PLMWindowCache(Files.createTempDirectory("windows"), 0);
+        assertFalse(cache.isEnabled());
+        cache.write(FIRST, body(1));
+        assertNull(cache.read(FIRST));
+    }
+
+    @Test
+    public void leastRecentlyUsedWindowIsEvicted() throws IOException {
+        // random bytes barely compress, so two windows fit and a third does not
+        PLMWindowCache cache = new PLMWindowCache(Files.createTempDirectory("windows"), 2500);
+        cache.write(FIRST, body(1));
+        cache.write(SECOND, body(2));
+        assertNotNull(read(cache, FIRST));
+        cache.write(THIRD, body(3));
+
+        assertNotNull(read(cache, FIRST));
+        assertNull(cache.read(SECOND));
+        assertNotNull(read(cache, THIRD));
+    }
+
+    @Test
+    public void cacheSurvivesARestart() throws IOException {
+        Path directory = Files.createTempDirectory("windows");
+        byte[] data = body(1);
+        new PLMWindowCache(directory, 1 << 20).write(FIRST, data);
+
+        PLMWindowCache restarted = new PLMWindowCache(directory, 1 << 20);
+        assertTrue(restarted.isEnabled());
+        assertArrayEquals(data, read(restarted, FIRST));
+    }
+
+    @Test
+    public void restartWithASmallerBudgetEvictsTheOldest() throws IOException {
+        Path directory = Files.createTempDirectory("windows");
+        PLMWindowCache cache = new PLMWindowCache(directory, 1 << 20);
+        cache.write(FIRST, body(1));
+        cache.write(SECOND, body(2));
+        cache.write(THIRD, body(3));
+        Files.setLastModifiedTime(directory.resolve("aa").resolve(FIRST + ".gz"), FileTime.fromMillis(1000));
+
+        PLMWindowCache restarted = new PLMWindowCache(directory, 2500);
+        assertNull(restarted.read(FIRST));
+        assertFalse(Files.exists(directory.resolve("aa").resolve(FIRST + ".gz")));
+        assertNotNull(read(restarted, SECOND));
+        assertNotNull(read(restarted, THIRD));
+    }
+
+    @Test
+    public void disabledCacheRemovesWhatAnEarlierRunLeft() throws IOException {
+        Path directory = Files.createTempDirectory("windows");
+        new PLMWindowCache(directory, 1 << 20).write(FIRST, body(1));
+        Files.createTempFile(directory, "window", ".tmp");
+
+        PLMWindowCache disabled = new PLMWindowCache(directory, 0);
+        assertNull(disabled.read(FIRST));
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertFalse(files.anyMatch(Files::isRegularFile));
+        }
+    }
+
+    @Test
+    public void unfinishedWritesAreDeletedAtStart() throws IOException {
+        Path directory = Files.createTempDirectory("windows");
+        Path temp = Files.createTempFile(directory, "window", ".tmp");
+        new PLMWindowCache(directory, 1 << 20);
+        assertFalse(Files.exists(temp));
+    }
+
+    @Test
+    public void closedWindowsSettleFirst() {
+        assertTrue(PLMWindowCache.isClosed(System.currentTimeMillis() - 3600000));
+        assertFalse(PLMWindowCache.isClosed(System.currentTimeMillis()));
+    }
+
+    private static byte[] body(int seed) {
+        byte[] data = new byte[1000];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(PLMWindowCache cache, String key) throws IOException {
+        InputStream cached = cache.read(key);
+        if (cached == null) {
+            return null;
+        }
+        try (InputStream data = cached) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = data.read(chunk)) != -1) {
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}